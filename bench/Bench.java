@@ -0,0 +1,275 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.regex.Pattern;
+
+/**
+    {@code Bench} is a small benchmark harness in the spirit of JMH: every case is run in a loop for a few timed warmup iterations (so the JIT settles) and then a few measured ones, and reports the mean time per operation with its spread and how many bytes each operation allocated. The project is built with plain javac and has no build tool to pull JMH in with, so this is what the suites in this directory use instead, and it does the two things that matter most of what JMH would:
+
+    - Every case runs in a JVM of its own (a fork: the same java, JVM options, classpath and suite, told which case to run through the `bench.fork` system property). Otherwise every case's operation goes through the one call in `iterate`, which the JIT compiles for whichever cases ran first, so a case's time would depend on what ran before it. With `forks` above one, each case runs in that many JVMs and the iterations of all of them count; with none, everything runs in this JVM, which is only good for a quick look.
+    - Allocation is only reported if the JVM can count it (HotSpot can, per thread); otherwise it is NaN, never a made up 0.
+
+    Results are written as CSV (`benchmark,params,ns_per_op,error_ns,alloc_bytes_per_op,operations`) so runs can be compared by machine. Given a baseline file from an earlier run, every case that got slower by more than the threshold is reported and the exit code is non-zero.
+
+    An {@code Operation} is one unit of work; it returns something derived from what it computed so the JIT can't throw the work away. A {@code Case} is a named, parameterized operation.
+ */
+public class Bench {
+    private static int WARMUP_ITERATIONS = 5;
+    private static int MEASURED_ITERATIONS = 5;
+    private static long ITERATION_NANOS = 300_000_000L;
+    private static double REGRESSION_THRESHOLD = 0.20;
+
+    private static String FORK_PROPERTY = "bench.fork"; // Set to a case's key in the JVM that measures it
+    private static String FORK_PREFIX = "bench-fork: "; // How a fork's iterations come back to the parent
+
+    private static long sink; // Everything operations return ends up here
+
+    /** An {@code Operation} does one unit of work. */
+    public interface Operation {
+        long run() throws Exception;
+    }
+
+    /** A {@code Case} is a benchmark name, a description of its parameters, and its operation. */
+    public static class Case {
+        private String name;
+        private String params;
+        private Operation operation;
+
+        public Case(String name, String params, Operation operation) {
+            if (name.contains(",") || params.contains(",")) {
+                throw new IllegalArgumentException("Names and params go into the CSV unquoted, so no commas: " + name + " " + params);
+            }
+            this.name = name;
+            this.params = params;
+            this.operation = operation;
+        }
+
+        // @formatter:off
+        public String get_key() { return name + (params.isEmpty() ? "" : "[" + params + "]"); }
+        // @formatter:on
+    }
+
+    /** One measured case */
+    private static class Result {
+        private Case measured;
+        private double ns_per_op;
+        private double error_ns;
+        private double alloc_bytes_per_op;
+        private long operations;
+
+        /** Sums up measured iterations, from however many JVMs; `allocated` is -1 if any of them couldn't count */
+        public Result(Case measured, double[] per_op, long allocated, long operations) {
+            double mean = 0;
+            for (double value : per_op) {
+                mean += value / per_op.length;
+            }
+            double variance = 0;
+            for (double value : per_op) {
+                variance += (value - mean) * (value - mean) / Math.max(1, per_op.length - 1);
+            }
+            this.measured = measured;
+            this.ns_per_op = mean;
+            this.error_ns = Math.sqrt(variance);
+            this.alloc_bytes_per_op = allocated < 0 ? Double.NaN : (double) allocated / operations;
+            this.operations = operations;
+        }
+
+        public String to_csv() {
+            return String.format(Locale.ROOT, "%s,%s,%.3f,%.3f,%.1f,%d",
+                    measured.name, measured.params, ns_per_op, error_ns, alloc_bytes_per_op, operations);
+        }
+    }
+
+    /**
+        Runs every case whose key matches `filter`, each in `forks` JVMs started from `suite` with its `args`, prints a table, writes the CSV to `output` and compares against `baseline` if it isn't null. Returns false if anything regressed.
+
+        In a fork, this just measures the one case it was started for and hands the iterations back on standard output.
+     */
+    public static boolean run(Class<?> suite, String[] args, List<Case> cases, String filter, int forks, Path output, Path baseline)
+            throws IOException {
+        String forked = System.getProperty(FORK_PROPERTY);
+        if (forked != null) {
+            for (Case bench_case : cases) {
+                if (bench_case.get_key().equals(forked)) {
+                    measure(bench_case, System.out);
+                    return true;
+                }
+            }
+            throw new IllegalArgumentException("No benchmark " + forked);
+        }
+
+        Pattern pattern = Pattern.compile(filter == null ? ".*" : filter);
+        List<Result> results = new ArrayList<>();
+        System.out.printf("%-48s %14s %12s %14s%n", "benchmark", "ns/op", "+- ns", "alloc B/op");
+        for (Case bench_case : cases) {
+            if (!pattern.matcher(bench_case.get_key()).find()) {
+                continue;
+            }
+            Result result = forks <= 0 ? measure(bench_case, null) : fork(suite, args, bench_case, forks);
+            results.add(result);
+            System.out.printf("%-48s %14.1f %12.1f %14.1f%n",
+                    bench_case.get_key(), result.ns_per_op, result.error_ns, result.alloc_bytes_per_op);
+        }
+
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(output))) {
+            writer.println("benchmark,params,ns_per_op,error_ns,alloc_bytes_per_op,operations");
+            for (Result result : results) {
+                writer.println(result.to_csv());
+            }
+        }
+        System.out.println("Wrote " + output);
+        return baseline == null || compare(results, baseline);
+    }
+
+    /** Warms up and measures a case in this JVM; in a fork, also writes the iterations to `report` for the parent to read */
+    private static Result measure(Case bench_case, PrintStream report) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iterate(bench_case.operation);
+        }
+
+        double[] per_op = new double[MEASURED_ITERATIONS];
+        long operations = 0;
+        long allocated = 0;
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            long allocated_before = allocated_bytes();
+            long[] timing = iterate(bench_case.operation);
+            long allocated_after = allocated_bytes();
+            if (allocated_before < 0 || allocated_after < 0 || allocated < 0) {
+                allocated = -1; // Can't tell, and a difference of two -1s would say nothing was allocated
+            } else {
+                allocated += allocated_after - allocated_before;
+            }
+            per_op[i] = (double) timing[0] / timing[1];
+            operations += timing[1];
+        }
+
+        if (report != null) {
+            StringJoiner line = new StringJoiner(" ", FORK_PREFIX, "");
+            line.add(Long.toString(allocated)).add(Long.toString(operations));
+            for (double value : per_op) {
+                line.add(Double.toString(value));
+            }
+            report.println(line);
+        }
+        return new Result(bench_case, per_op, allocated, operations);
+    }
+
+    /** Measures a case in `forks` fresh JVMs, one after the other, and sums up all of their iterations */
+    private static Result fork(Class<?> suite, String[] args, Case bench_case, int forks) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString()));
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-D" + FORK_PROPERTY + "=" + bench_case.get_key());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(suite.getName());
+        command.addAll(List.of(args));
+
+        double[] per_op = new double[0];
+        long allocated = 0;
+        long operations = 0;
+        for (int i = 0; i < forks; i++) {
+            Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            String report = null;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    if (line.startsWith(FORK_PREFIX)) {
+                        report = line.substring(FORK_PREFIX.length());
+                    } else {
+                        System.out.println(line); // Whatever the suite itself prints
+                    }
+                }
+            }
+            int status;
+            try {
+                status = process.waitFor();
+            } catch (InterruptedException e) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while running " + bench_case.get_key(), e);
+            }
+            if (status != 0 || report == null) {
+                throw new IOException("The fork for " + bench_case.get_key() + " failed (exit code " + status + ")");
+            }
+
+            String[] fields = report.split(" ");
+            long fork_allocated = Long.parseLong(fields[0]);
+            allocated = allocated < 0 || fork_allocated < 0 ? -1 : allocated + fork_allocated;
+            operations += Long.parseLong(fields[1]);
+            int measured = per_op.length;
+            per_op = Arrays.copyOf(per_op, measured + fields.length - 2);
+            for (int field = 2; field < fields.length; field++) {
+                per_op[measured + field - 2] = Double.parseDouble(fields[field]);
+            }
+        }
+        return new Result(bench_case, per_op, allocated, operations);
+    }
+
+    /** Runs the operation until an iteration's worth of time has passed; returns elapsed nanoseconds and operations */
+    private static long[] iterate(Operation operation) {
+        long operations = 0;
+        long begin = System.nanoTime();
+        long elapsed;
+        do {
+            // Batches keep the clock out of the measurement for fast operations
+            try {
+                for (int i = 0; i < 64; i++) {
+                    sink += operation.run();
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            operations += 64;
+            elapsed = System.nanoTime() - begin;
+        } while (elapsed < ITERATION_NANOS);
+        return new long[] { elapsed, operations };
+    }
+
+    /** Bytes allocated by this thread so far, or -1 if the JVM can't tell */
+    private static long allocated_bytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported()
+                && threads.isThreadAllocatedMemoryEnabled()) {
+            return threads.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    /** Reports cases that got slower than the baseline by more than the threshold */
+    private static boolean compare(List<Result> results, Path baseline) throws IOException {
+        Map<String, Double> previous = new HashMap<>();
+        List<String> lines = Files.readAllLines(baseline);
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split(",");
+            previous.put(fields[0] + "," + fields[1], Double.parseDouble(fields[2]));
+        }
+
+        boolean ok = true;
+        for (Result result : results) {
+            Double before = previous.get(result.measured.name + "," + result.measured.params);
+            if (before == null) {
+                continue;
+            }
+            double change = (result.ns_per_op - before) / before;
+            if (change > REGRESSION_THRESHOLD) {
+                ok = false;
+                System.out.printf("REGRESSION %s: %.1f -> %.1f ns/op (%+.0f%%)%n",
+                        result.measured.get_key(), before, result.ns_per_op, change * 100);
+            }
+        }
+        System.out.println(ok ? "No regressions against " + baseline : "Regressions against " + baseline);
+        return ok;
+    }
+}
@@ -0,0 +1,157 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.Scanner;
+
+/**
+    The {@code ChartLoadBenchmark} compares {@link ChartLoader} (text and memory-mapped binary) against the old way of loading charts (each lane running its own Scanner pass into a {@code LinkedList<Long>}). It writes synthetic charts of increasing size to a temporary file, then reports mean load time and the heap retained by the loaded result.
+
+    Usage: `java ChartLoadBenchmark [notes per lane...]` from a classpath holding both "src" and "bench".
+ */
+public class ChartLoadBenchmark {
+    private static String[] LETTERS = { "D", "F", "J", "K" };
+    private static int WARMUP_ROUNDS = 3;
+    private static int MEASURED_ROUNDS = 5;
+
+    private static Object sink; // Holds the load being measured, so it can't be optimized away or collected before the heap is read
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = args.length == 0 ? new int[] { 25_000, 100_000, 250_000 } : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+
+        System.out.printf("%12s %10s %10s %12s %12s %12s %12s %12s%n",
+                "notes", "text KiB", "bin KiB", "scanner ms", "loader ms", "binary ms", "scanner KiB", "loader KiB");
+        for (int size : sizes) {
+            Path chart = write_chart(size);
+            Path binary = ChartLoader.binary_path_of(chart);
+            try {
+                ChartLoader.compile(chart, binary, LETTERS);
+                double scanner_ms = time(() -> legacy_load_all(chart));
+                double loader_ms = time(() -> ChartLoader.load(chart, LETTERS));
+                double binary_ms = time(() -> load_binary(binary));
+                long scanner_bytes = retained(() -> legacy_load_all(chart));
+                long loader_bytes = retained(() -> ChartLoader.load(chart, LETTERS));
+                System.out.printf("%12d %10d %10d %12.2f %12.2f %12.2f %12d %12d%n",
+                        size * LETTERS.length,
+                        Files.size(chart) / 1024,
+                        Files.size(binary) / 1024,
+                        scanner_ms,
+                        loader_ms,
+                        binary_ms,
+                        scanner_bytes / 1024,
+                        loader_bytes / 1024);
+            } finally {
+                Files.deleteIfExists(chart);
+                Files.deleteIfExists(binary);
+            }
+        }
+    }
+
+    /** Writes a chart with `notes_per_lane` strictly increasing beats in every lane */
+    private static Path write_chart(int notes_per_lane) throws IOException {
+        Random random = new Random(notes_per_lane);
+        // The Scanner reads the delay in the default locale, so write it that way too
+        StringBuilder builder = new StringBuilder(String.format("%.6f%n128%n", 0.025056));
+        for (String letter : LETTERS) {
+            builder.append(letter).append('\n');
+            long beat = 0;
+            for (int i = 0; i < notes_per_lane; i++) {
+                beat += 1 + random.nextInt(4);
+                builder.append(beat).append(i + 1 == notes_per_lane ? '\n' : ' ');
+            }
+        }
+        builder.append("\nBenchmark chart; not for playing.\n");
+        Path chart = Files.createTempFile("yuri-bench", ".yrct");
+        Files.writeString(chart, builder);
+        return chart;
+    }
+
+    /** Mean wall time of a load in milliseconds, after warmup */
+    private static double time(Load load) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            load.run();
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            load.run();
+        }
+        return (System.nanoTime() - begin) / 1e6 / MEASURED_ROUNDS;
+    }
+
+    /** Heap still in use while the result of a load is held, relative to before the load */
+    private static long retained(Load load) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        settle();
+        long before = memory.getHeapMemoryUsage().getUsed();
+        sink = load.run();
+        settle();
+        long after = memory.getHeapMemoryUsage().getUsed();
+        sink = null;
+        return Math.max(0, after - before);
+    }
+
+    private static void settle() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static Object load_binary(Path binary) {
+        try {
+            return ChartLoader.load_binary(binary, LETTERS);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private interface Load {
+        Object run();
+    }
+
+    /** The old path: one NoteManager per letter, each rescanning the file */
+    private static Object legacy_load_all(Path chart) {
+        Object[] lanes = new Object[LETTERS.length];
+        for (int i = 0; i < LETTERS.length; i++) {
+            lanes[i] = legacy_load(chart.toString(), LETTERS[i]);
+        }
+        return lanes;
+    }
+
+    /** Verbatim copy of what `NoteManager.load_chart` used to do */
+    private static LinkedList<Long> legacy_load(String chart_file_path, String letter) {
+        LinkedList<Long> chart = new LinkedList<>();
+        long delay = 0;
+        long beat_spacing = 0;
+
+        try (Scanner scanner = new Scanner(new File(chart_file_path))) {
+            delay = (long) (1e9 * scanner.nextDouble());
+            beat_spacing = (long) ((1e9 / scanner.nextInt()) * 60);
+
+            while (scanner.hasNextLine()) {
+                String line = scanner.nextLine();
+                if (line.equals(letter)) {
+                    while (scanner.hasNextLong()) {
+                        long beat = scanner.nextLong();
+                        chart.addLast(delay + beat_spacing * beat);
+                    }
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return chart;
+    }
+}
@@ -0,0 +1,240 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import javafx.scene.input.KeyCode;
+
+/**
+    {@code YuriBenchmarks} is the benchmark suite for the hot paths of the game, run by {@link Bench}: chart loading, stepping notes, stepping sparkles, judging keypresses, the HUD with and without score changes, and a whole frame of every Manager. The scene graph pieces are built detached from any window, so nothing is shown and no FX thread is needed, only the toolkit for fonts; `-Dprism.order=sw` lets that start on machines without a GPU.
+
+    Usage (from this directory, so "../assets" resolves): `java -Dprism.order=sw --module-path <javafx> --add-modules javafx.controls,javafx.media YuriBenchmarks [--filter=<regex>] [--forks=<n>] [--output=<csv>] [--baseline=<csv>]`
+
+    The filter is matched against names like `note.handle_timestep[notes=1000]`. Every case runs in a JVM of its own, or in `--forks` of them (0 runs them all in this one, for a quick look). With a baseline from an earlier run the exit code is 1 if anything got more than 20% slower.
+ */
+public class YuriBenchmarks {
+    private static String[] LETTERS = { "D", "F", "J", "K" };
+    private static int CHART_NOTES_PER_LANE = 25_000;
+    private static int[] NOTE_COUNTS = { 100, 1_000, 10_000 };
+    private static int[] SPARKLE_BURSTS = { 1, 10, 100 };
+    private static double FRAME_SECONDS = 1.0 / 240;
+
+    public static void main(String[] args) throws IOException {
+        String filter = option(args, "filter", null);
+        Path output = Path.of(option(args, "output", "bench-results.csv"));
+        String baseline = option(args, "baseline", null);
+        int forks = Integer.parseInt(option(args, "forks", "1"));
+        Mini.Messenger.SONG_NAME = "Cadente";
+        Mini.Messenger.ARTIST_NAME = "Frozen Starfall"; // As in "songs.txt"
+
+        Path chart = Files.createTempFile("yuri-bench", ".yrct");
+        Path binary = ChartLoader.binary_path_of(chart);
+        boolean ok;
+        try {
+            Files.write(chart, synthetic_chart(CHART_NOTES_PER_LANE));
+            ChartLoader.compile(chart, binary, LETTERS);
+            ok = Bench.run(YuriBenchmarks.class, args, cases(chart, binary), filter, forks, output,
+                    baseline == null ? null : Path.of(baseline));
+        } finally {
+            Files.deleteIfExists(chart); // Every fork makes its own, so they had better go
+            Files.deleteIfExists(binary);
+        }
+        System.exit(ok ? 0 : 1); // The toolkit's threads would keep the JVM up
+    }
+
+    /** Looks for `--name=value` among the arguments */
+    private static String option(String[] args, String name, String fallback) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return fallback;
+    }
+
+    private static List<Bench.Case> cases(Path chart, Path binary) throws IOException {
+        String notes = "notes=" + CHART_NOTES_PER_LANE * LETTERS.length;
+        byte[] text = Files.readAllBytes(chart);
+        ChartLoader.Sheet sheet = ChartLoader.parse_text(text, LETTERS);
+
+        List<Bench.Case> cases = new ArrayList<>();
+        cases.add(new Bench.Case("chart.parse_text", notes,
+                () -> ChartLoader.parse_text(text, LETTERS).get_note_count()));
+        cases.add(new Bench.Case("chart.load_binary", notes,
+                () -> ChartLoader.load_binary(binary, LETTERS).get_note_count()));
+        for (int count : NOTE_COUNTS) {
+            cases.add(new Bench.Case("note.handle_timestep", "notes=" + count, note_timestep(count)));
+        }
+        for (int bursts : SPARKLE_BURSTS) {
+            cases.add(new Bench.Case("sparkle.step", "bursts=" + bursts, sparkle_step(bursts)));
+        }
+        cases.add(new Bench.Case("engine.strike", notes, engine_strike(sheet)));
+        cases.add(new Bench.Case("gameplay.strike_note", "thin_air;lanes=4", strike_dispatch(4)));
+        cases.add(new Bench.Case("gameplay.strike_note", "thin_air;lanes=10", strike_dispatch(10)));
+        cases.add(new Bench.Case("hud", "steady", hud(0)));
+        cases.add(new Bench.Case("hud", "judgement_every_frame", hud(1)));
+        cases.add(new Bench.Case("frame", "song=cadente", frame()));
+        return cases;
+    }
+
+    /** A chart in the `.yrct` format with `notes_per_lane` strictly increasing beats in every lane */
+    private static byte[] synthetic_chart(int notes_per_lane) {
+        Random random = new Random(notes_per_lane);
+        StringBuilder builder = new StringBuilder("0.025056\n128\n");
+        for (String letter : LETTERS) {
+            builder.append(letter).append('\n');
+            long beat = 0;
+            for (int i = 0; i < notes_per_lane; i++) {
+                beat += 1 + random.nextInt(4);
+                builder.append(beat).append(i + 1 == notes_per_lane ? '\n' : ' ');
+            }
+        }
+        builder.append("\nBenchmark chart; not for playing.\n");
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** One frame of `count` notes spread over a fall, each relocating itself */
+    private static Bench.Operation note_timestep(int count) {
+        Note[] notes = new Note[count];
+        for (int i = 0; i < count; i++) {
+            notes[i] = new Note();
+            notes[i].reset(i * Engine.get_falling_time() / count, i);
+        }
+        long[] time = { 0 };
+        return () -> {
+            time[0] = (time[0] + 4_166_667L) % Engine.get_falling_time();
+            for (Note note : notes) {
+                note.handle_timestep(time[0]);
+            }
+            return notes[0].get_status().ordinal();
+        };
+    }
+
+    /** One timestep of the sparkle engine with `bursts` sparkles kept alive */
+    private static Bench.Operation sparkle_step(int bursts) {
+        SparkleManager sparkles = new SparkleManager();
+        Random random = new Random(bursts);
+        return () -> {
+            while (sparkles.get_live_count() < bursts * 20) {
+                sparkles.add_sparkle(random.nextDouble() * 800, random.nextDouble() * 600, Nord.ALL_AURORA);
+            }
+            sparkles.step(FRAME_SECONDS);
+            return sparkles.get_live_count();
+        };
+    }
+
+    /** Judges a perfect press on the earliest note not yet pressed, in any lane, starting over when the chart runs out */
+    private static Bench.Operation engine_strike(ChartLoader.Sheet sheet) {
+        // Everything has spawned but song time stands still, so nothing is lost unless presses skip past it
+        Engine.Clock clock = new Engine.Clock() {
+            // @formatter:off
+            public long get_song_time() { return 0; }
+            public long get_visual_time() { return Long.MAX_VALUE; }
+            // @formatter:on
+        };
+        Engine[] engine = { null };
+        int[] cursors = new int[LETTERS.length];
+        int notes = sheet.get_note_count();
+        int[] pressed = { notes };
+        return () -> {
+            if (pressed[0] == notes) {
+                engine[0] = new Engine(sheet, clock);
+                engine[0].tick();
+                Arrays.fill(cursors, 0);
+                pressed[0] = 0;
+            }
+            int current = -1;
+            for (int lane = 0; lane < LETTERS.length; lane++) {
+                if (cursors[lane] < engine[0].get_note_count(lane) && (current < 0
+                        || engine[0].get_time(lane, cursors[lane]) < engine[0].get_time(current, cursors[current]))) {
+                    current = lane;
+                }
+            }
+            pressed[0]++;
+            long time = engine[0].get_time(current, cursors[current]++) + Engine.get_travel_time();
+            return engine[0].strike(current, time).ordinal();
+        };
+    }
+
+    /** Routes a keypress through the key lookup in {@link GameplayManager} to an empty stretch of a generated chart with `lane_count` lanes */
+    private static Bench.Operation strike_dispatch(int lane_count) {
+        Headless.SimulatedClock clock = new Headless.SimulatedClock();
+        String[] letters = Mini.Keys.layout(lane_count);
+        ChartLoader.Sheet sheet = new ChartGenerator(lane_count, 480, 1000, 1, 1, 0).to_sheet(letters);
+        GameplayManager gameplay = new GameplayManager(new SparkleManager(), Mini.RendererType.NODES, clock, sheet);
+        gameplay.distribute_timestep();
+        KeyCode[] keys = new KeyCode[lane_count];
+        for (int i = 0; i < lane_count; i++) {
+            keys[i] = Mini.Keys.key_of(letters[i]);
+        }
+        int[] lane = { 0 };
+        return () -> {
+            lane[0] = (lane[0] + 1) % lane_count;
+            gameplay.strike_note(gameplay.get_lane(keys[lane[0]]), -Engine.get_falling_time());
+            return gameplay.get_engine().get_score().get_misses();
+        };
+    }
+
+    /** A frame of the charts and labels, with a hit published every `every` frames (never if 0); steady state should allocate nothing */
+    private static Bench.Operation hud(int every) {
+        ChartManager charts = new ChartManager();
+        LabelManager labels = new LabelManager();
+        Scoreboard scoreboard = new Scoreboard();
+        Mini.Messenger.set_scoreboard(scoreboard);
+        long[] frame = { 0 };
+        return () -> {
+            if (Mini.Messenger.get_scoreboard() != scoreboard) { // Another case swapped its own in
+                Mini.Messenger.set_scoreboard(scoreboard);
+            }
+            if (every > 0 && frame[0]++ % every == 0) {
+                scoreboard.publish(Engine.Judgement.PERFECT.ordinal(), 0, 0, frame[0]);
+            }
+            charts.distribute_timestep();
+            labels.distribute_timestep();
+            return scoreboard.get_snapshot().get_events();
+        };
+    }
+
+    /** What the timer in "Yuri.java" does in a frame, on the real chart with autoplay, starting over when the song ends */
+    private static Bench.Operation frame() {
+        Song song = new Song();
+        return () -> {
+            if (song.gameplay == null || song.gameplay.get_engine().is_finished()) {
+                song.start();
+            }
+            long time = song.clock.get_song_time() + (long) (FRAME_SECONDS * 1e9);
+            song.clock.set(time);
+            while (song.next < song.presses.size() && song.presses.get_time(song.next) <= time) {
+                song.gameplay.strike_note(song.presses.get_lane(song.next), song.presses.get_time(song.next));
+                song.next++;
+            }
+            song.gameplay.distribute_timestep();
+            song.charts.distribute_timestep();
+            song.labels.distribute_timestep();
+            song.sparkles.step(FRAME_SECONDS);
+            return song.sparkles.get_live_count();
+        };
+    }
+
+    /** A {@code Song} is every Manager of a game in progress, detached, with autoplay doing the pressing. */
+    private static class Song {
+        private SparkleManager sparkles = new SparkleManager();
+        private ChartManager charts = new ChartManager();
+        private LabelManager labels = new LabelManager();
+        private GameplayManager gameplay;
+        private Headless.SimulatedClock clock;
+        private Headless.Presses presses;
+        private int next;
+
+        public void start() {
+            clock = new Headless.SimulatedClock();
+            gameplay = new GameplayManager(sparkles, Mini.RendererType.NODES, clock);
+            presses = Headless.Presses.autoplay(ChartLoader.load(Mini.Messenger.SONG_NAME, LETTERS), 10, 0);
+            next = 0;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+    A {@code ChartGenerator} makes up charts, the way "chartgen.py" does: a Markov chain picks pattern after pattern (staircase, alternate, out-in-out, boom, streak), each a few beats long. It exists for stress testing, so it also does what the Python script can't: charts of millions of notes, at any BPM, optionally getting denser as they go. The fill is the chance that a beat gets its pattern step rather than a rest, and it goes linearly from `fill_from` on the first beat to `fill_to` on the last.
+
+    The same seed always makes the same chart, which is what lets a huge chart be written as text without ever holding it: `.yrct` lists every beat of one lane before the next lane, so `write` plays the generator through once per lane and keeps that lane's beats only. `to_sheet` skips the text and hands the spawn times straight to a {@link ChartLoader.Sheet}.
+
+    Usage: `java ChartGenerator <out.yrct> [--lanes=<n>] [--beats=<n>] [--bpm=<n>] [--fill=<from>,<to>] [--seed=<n>]`; lanes get the usual layout for their count (4 by default, see {@link Mini.Keys}). See {@link StressTest} for playing one.
+ */
+public class ChartGenerator {
+    private static long DELAY = 2_000_000_000L; // Time for the first notes to fall
+    private static double[][] TRANSITIONS = { // Same as chartgen.py
+            { 0.3, 0.1, 0.6, 0.0, 0.0 },
+            { 0.1, 0.0, 0.1, 0.2, 0.6 },
+            { 0.1, 0.0, 0.4, 0.5, 0.0 },
+            { 0.4, 0.0, 0.0, 0.6, 0.0 },
+            { 0.1, 0.7, 0.1, 0.1, 0.0 },
+    };
+
+    private int lane_count;
+    private int bpm;
+    private long beats;
+    private double fill_from;
+    private double fill_to;
+    private long seed;
+
+    // Where the generator is; `reset` puts it back on the first beat
+    private SplittableRandom random;
+    private int state;
+    private long beat;
+    private int[] pattern = new int[64]; // Lane masks of the current pattern's steps
+    private int pattern_length;
+    private int pattern_step;
+
+    public ChartGenerator(int lane_count, int bpm, long beats, double fill_from, double fill_to, long seed) {
+        this.lane_count = lane_count;
+        this.bpm = bpm;
+        this.beats = beats;
+        this.fill_from = fill_from;
+        this.fill_to = fill_to;
+        this.seed = seed;
+        this.random = new SplittableRandom(seed); // The rest of where it is starts at zero, as after `reset`
+    }
+
+    // @formatter:off
+    public int get_lane_count() { return lane_count; }
+    public int get_bpm() { return bpm; }
+    public long get_beats() { return beats; }
+    public long get_delay() { return DELAY; }
+    public long get_beat_spacing() { return (long) ((1e9 / bpm) * 60); }
+    // @formatter:on
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java ChartGenerator <out.yrct> [--lanes=<n>] [--beats=<n>] [--bpm=<n>] [--fill=<from>,<to>] [--seed=<n>]");
+            System.exit(1);
+        }
+        ChartGenerator generator = from_options(args);
+        long begin = System.nanoTime();
+        long notes = generator.write(Path.of(args[0]), Mini.Keys.layout(generator.get_lane_count()));
+        System.out.printf("%s: %d notes over %d beats at %d BPM, written in %.1f ms%n",
+                args[0], notes, generator.get_beats(), generator.get_bpm(), (System.nanoTime() - begin) / 1e6);
+    }
+
+    /** A generator set up from `--lanes`, `--beats`, `--bpm`, `--fill` and `--seed` among the arguments (the rest are ignored) */
+    public static ChartGenerator from_options(String[] args) {
+        int lane_count = 4;
+        int bpm = 480;
+        long beats = -1;
+        double fill_from = 1.0;
+        double fill_to = 1.0;
+        long seed = 0;
+        for (String arg : args) {
+            if (arg.startsWith("--lanes=")) {
+                lane_count = Integer.parseInt(arg.substring("--lanes=".length()));
+            } else if (arg.startsWith("--bpm=")) {
+                bpm = Integer.parseInt(arg.substring("--bpm=".length()));
+            } else if (arg.startsWith("--beats=")) {
+                beats = Long.parseLong(arg.substring("--beats=".length()));
+            } else if (arg.startsWith("--fill=")) {
+                String[] fills = arg.substring("--fill=".length()).split(",");
+                fill_from = Double.parseDouble(fills[0]);
+                fill_to = Double.parseDouble(fills[fills.length - 1]);
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            }
+        }
+        if (beats < 0) {
+            beats = 3L * bpm; // Three minutes
+        }
+        return new ChartGenerator(lane_count, bpm, beats, fill_from, fill_to, seed);
+    }
+
+    /** Back to the first beat; the same beats come out again */
+    public void reset() {
+        random = new SplittableRandom(seed);
+        state = 0;
+        beat = 0;
+        pattern_length = 0;
+        pattern_step = 0;
+    }
+
+    /** True until every beat has been handed out */
+    public boolean has_next() {
+        return beat < beats;
+    }
+
+    /** The lanes (bit `lane` set) that have a note on the next beat, zero for a rest */
+    public int next() {
+        double fill = beats <= 1 ? fill_from : fill_from + (fill_to - fill_from) * beat / (beats - 1);
+        beat++;
+        if (random.nextDouble() >= fill) {
+            return 0;
+        }
+        if (pattern_step == pattern_length) {
+            next_pattern();
+        }
+        return pattern[pattern_step++];
+    }
+
+    /** Plays the whole chart into spawn times for every lane */
+    public ChartLoader.Sheet to_sheet(String[] letters) {
+        reset();
+        long spacing = get_beat_spacing();
+        long[][] lanes = new long[lane_count][];
+        int[] sizes = new int[lane_count];
+        for (int lane = 0; lane < lane_count; lane++) {
+            lanes[lane] = new long[1024];
+        }
+        for (long index = 0; has_next(); index++) {
+            int mask = next();
+            for (int lane = 0; lane < lane_count; lane++) {
+                if ((mask & (1 << lane)) == 0) {
+                    continue;
+                }
+                if (sizes[lane] == lanes[lane].length) {
+                    lanes[lane] = Arrays.copyOf(lanes[lane], lanes[lane].length * 2);
+                }
+                lanes[lane][sizes[lane]++] = DELAY + spacing * index;
+            }
+        }
+        for (int lane = 0; lane < lane_count; lane++) {
+            lanes[lane] = Arrays.copyOf(lanes[lane], sizes[lane]);
+        }
+        return new ChartLoader.Sheet(DELAY, bpm, letters, lanes);
+    }
+
+    /** Writes the chart as `.yrct` text, one pass per lane so nothing but the writer's buffer is held; returns the note count */
+    public long write(Path path, String[] letters) throws IOException {
+        long notes = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writer.write(String.format("%d,%09d%n%d%n", DELAY / 1_000_000_000L, DELAY % 1_000_000_000L, bpm));
+            for (int lane = 0; lane < lane_count; lane++) {
+                writer.write(letters[lane]);
+                writer.newLine();
+                reset();
+                boolean first = true;
+                for (long index = 0; has_next(); index++) {
+                    if ((next() & (1 << lane)) == 0) {
+                        continue;
+                    }
+                    if (!first) {
+                        writer.write(' ');
+                    }
+                    writer.write(Long.toString(index));
+                    first = false;
+                    notes++;
+                }
+                writer.newLine();
+            }
+            writer.newLine();
+            writer.write("Generated by ChartGenerator: " + beats + " beats, fill " + fill_from + " to " + fill_to
+                    + ", seed " + seed);
+            writer.newLine();
+        }
+        return notes;
+    }
+
+    /** Moves the Markov chain on and lays out the pattern it lands on, with a random depth like chartgen.py */
+    private void next_pattern() {
+        double pick = random.nextDouble();
+        double cumulative = 0;
+        for (int i = 0; i < TRANSITIONS[state].length; i++) {
+            cumulative += TRANSITIONS[state][i];
+            if (cumulative >= pick) {
+                state = i;
+                break;
+            }
+        }
+        int depth = 1 + random.nextInt(3);
+        int all = (1 << lane_count) - 1;
+        pattern_length = 0;
+        pattern_step = 0;
+        switch (state) {
+            case 0 -> { // Staircase: `depth` neighbouring lanes at once, marching along
+                int chord = (1 << Math.min(depth, lane_count)) - 1;
+                for (int i = 0; i < lane_count; i++) {
+                    add_step(((chord << i) | (chord >>> (lane_count - i))) & all);
+                }
+            }
+            case 1 -> { // Alternate: the first `depth` lanes, then the last
+                int chord = (1 << Math.min(depth, lane_count)) - 1;
+                add_step(chord);
+                add_step(Integer.reverse(chord) >>> (32 - lane_count));
+            }
+            case 2 -> { // Out-in-out
+                int outside = 1 | (1 << (lane_count - 1));
+                add_step(outside);
+                for (int i = 0; i < depth; i++) {
+                    add_step(all & ~outside);
+                    add_step(outside);
+                }
+            }
+            case 3 -> { // Boom: nothing, everything, nothing
+                add_step(0);
+                for (int i = 0; i < depth; i++) {
+                    add_step(all);
+                }
+                add_step(0);
+            }
+            default -> { // Streak: 1, 0, 3, 2, ...
+                for (int i = 0; i < depth; i++) {
+                    for (int lane = 0; lane < lane_count; lane++) {
+                        add_step(1 << Math.min(lane ^ 1, lane_count - 1));
+                    }
+                }
+            }
+        }
+    }
+
+    private void add_step(int mask) {
+        pattern[pattern_length++] = mask;
+    }
+}
@@ -0,0 +1,774 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+/**
+    The {@code ChartLoader} reads a chart exactly once and splits it into one timeline per trace letter. Previously each {@link NoteManager} skimmed the whole file with a Scanner to find its own letter, which meant four tokenizing passes (and a pile of boxed Longs) per song.
+
+    Charts come in two flavours. The `.yrct` text format is for authoring (see "cadente.yrct"). The `.yrcb` binary format is compiled from it by running this class (`java ChartLoader cadente.yrct`) and is what gets read when it exists and is newer than its text source, since it is memory-mapped and decoded without any tokenizing. Its layout, all big-endian:
+
+    magic "YRCB" (4 bytes), version (1 byte), delay in nanoseconds (8 bytes), bpm (4 bytes), lane count (1 byte)
+    repeat lane count { letter (2 byte char), note count (4 bytes), data offset from file start (4 bytes), data length (4 bytes) }
+    lane data: each beat minus the previous one (starting at 0), zigzag varint encoded
+
+    A chart's lanes are whatever letters it has blocks for, in the order they first appear; a lane's letter is also the key that plays it (see {@link Mini.Keys}). Every method that takes `letters` takes null to mean exactly that, which is how the game loads charts of any width; given letters instead pick out (and order) just those lanes.
+
+    A {@code Sheet} is the parsed chart: the delay, the BPM, and for every lane a sorted {@code long[]} of spawn times in nanoseconds since the song started. A {@code Lane} is a cheap view over one of those arrays with its own read cursor, so the same Sheet can be handed out again without re-reading anything. Everything reads spawn times through Lanes, never as whole arrays, so a streamed sheet (below) can stand in for any other.
+
+    Marathon charts are too long to decode up front: the spawn times alone would be 8 bytes a note for the whole song, and decoding them all would hold up the start. So a binary chart with more than 50,000 notes (a good half hour of dense play) is streamed instead ({@code StreamedSheet}). Opening it only skims the mapped file once for where every block of 1024 notes starts, and each {@code StreamedLane} decodes the blocks from the engine's first live note to a few seconds past the fall (see {@link Engine}), on a virtual thread whenever that note moves into a new block, dropping the ones behind it. The first window is decoded when the lane is made, so play starts straight away, and heap use stays the same however long the song is, apart from the skimmed index (20 bytes per block). A read outside the window, e.g. right after a seek, decodes its block on the spot.
+ */
+public class ChartLoader {
+    private static String ASSET_DIRECTORY = "../assets/";
+    private static String TEXT_EXTENSION = ".yrct";
+    private static String BINARY_EXTENSION = ".yrcb";
+    private static byte[] MAGIC = { 'Y', 'R', 'C', 'B' };
+    private static byte VERSION = 1;
+    private static int HEADER_SIZE = 4 + 1 + 8 + 4 + 1;
+    private static int LANE_ENTRY_SIZE = 2 + 4 + 4 + 4;
+    private static String[] DEFAULT_LETTERS = { "D", "F", "J", "K" };
+    private static int STREAMING_NOTES = 50_000; // About 400 KB of spawn times; an ordinary song has a few thousand notes
+
+    /** Compiles `.yrct` files given as arguments into `.yrcb` files next to them */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java ChartLoader <chart.yrct>...");
+            System.exit(1);
+        }
+        for (String arg : args) {
+            Path text = Path.of(arg);
+            Path binary = binary_path_of(text);
+            compile(text, binary, null);
+            System.out.println(text + " -> " + binary + " (" + Files.size(binary) + " bytes)");
+        }
+    }
+
+    /** Resolves the chart belonging to a song name, e.g. "Cadente" to "../assets/cadente.yrct" */
+    public static Path path_of(String song_name) {
+        return Path.of(ASSET_DIRECTORY + song_name.toLowerCase() + TEXT_EXTENSION);
+    }
+
+    /** Swaps the extension of a text chart for the binary one */
+    public static Path binary_path_of(Path text) {
+        String name = text.getFileName().toString();
+        if (name.endsWith(TEXT_EXTENSION)) {
+            name = name.substring(0, name.length() - TEXT_EXTENSION.length());
+        }
+        return text.resolveSibling(name + BINARY_EXTENSION);
+    }
+
+    /** Reads and parses the chart of a song, preferring an up-to-date binary; letters are the lanes to look for */
+    public static Sheet load(String song_name, String[] letters) {
+        return load_compiled(path_of(song_name), letters);
+    }
+
+    /** Reads and parses a text chart, or its binary if that is up to date */
+    public static Sheet load_compiled(Path text, String[] letters) {
+        Path binary = binary_path_of(text);
+        if (is_fresh(binary, text)) {
+            try {
+                return count_notes(binary) > STREAMING_NOTES ? stream_binary(binary, letters) : load_binary(binary, letters);
+            } catch (Exception e) {
+                e.printStackTrace(); // Fall back on the text, which is the source of truth anyway
+            }
+        }
+        return load(text, letters);
+    }
+
+    /** Reads and parses a text chart file; unreadable files produce an empty sheet */
+    public static Sheet load(Path chart_file_path, String[] letters) {
+        try {
+            return parse_text(Files.readAllBytes(chart_file_path), letters);
+        } catch (Exception e) {
+            e.printStackTrace();
+            String[] lanes = letters == null ? DEFAULT_LETTERS : letters;
+            return new Sheet(0, 0, lanes, new long[lanes.length][]);
+        }
+    }
+
+    /** True if the binary exists and is strictly newer than the text (or the text is gone) */
+    private static boolean is_fresh(Path binary, Path text) {
+        try {
+            if (!Files.exists(binary)) {
+                return false;
+            }
+            if (!Files.exists(text)) {
+                return true;
+            }
+            return Files.getLastModifiedTime(binary).compareTo(Files.getLastModifiedTime(text)) > 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Parses the `.yrct` text format into spawn times */
+    public static Sheet parse_text(byte[] bytes, String[] letters) {
+        Beats beats = parse_beats(bytes, letters);
+        long beat_spacing = beat_spacing(beats.bpm);
+        for (long[] lane : beats.lanes) {
+            if (lane == null) {
+                continue;
+            }
+            for (int i = 0; i < lane.length; i++) { // In place; the beats aren't needed afterwards
+                lane[i] = beats.delay + beat_spacing * lane[i];
+            }
+        }
+        return new Sheet(beats.delay, beats.bpm, beats.letters, beats.lanes);
+    }
+
+    /**
+        Parses the `.yrct` text format in one pass over the raw bytes. The rules are the same ones the Scanner used to follow: a delay (either decimal separator is fine), a BPM, and then any line that is exactly a lane letter starts that lane's beats, which run until the first token that isn't an integer. Only the first block for each letter counts; everything else is a comment.
+     */
+    private static Beats parse_beats(byte[] bytes, String[] letters) {
+        if (letters == null) {
+            letters = find_letters(bytes);
+        }
+        Tokenizer tokenizer = new Tokenizer(bytes);
+        long delay = (long) (1e9 * Double.parseDouble(tokenizer.next_token().replace(',', '.')));
+        int bpm = Integer.parseInt(tokenizer.next_token());
+
+        long[][] lanes = new long[letters.length][];
+        while (tokenizer.has_next_line()) {
+            int lane = index_of(letters, tokenizer.next_line());
+            if (lane < 0 || lanes[lane] != null) {
+                continue;
+            }
+            long[] beats = new long[64];
+            int size = 0;
+            while (tokenizer.has_next_long()) {
+                if (size == beats.length) {
+                    beats = Arrays.copyOf(beats, size * 2);
+                }
+                beats[size++] = tokenizer.next_long();
+            }
+            lanes[lane] = Arrays.copyOf(beats, size);
+        }
+        return new Beats(delay, bpm, letters, lanes);
+    }
+
+    /** The chart's lane letters, in order: every line of a single character other than a digit, followed by a line that starts with an integer */
+    private static String[] find_letters(byte[] bytes) {
+        Tokenizer tokenizer = new Tokenizer(bytes);
+        tokenizer.next_line(); // Delay
+        tokenizer.next_line(); // BPM
+        ArrayList<String> letters = new ArrayList<>();
+        String line = tokenizer.has_next_line() ? tokenizer.next_line().strip() : "";
+        while (tokenizer.has_next_line()) {
+            String next = tokenizer.next_line().strip();
+            boolean header = line.length() == 1 && !Character.isDigit(line.charAt(0));
+            if (header && !next.isEmpty() && Character.isDigit(next.charAt(0)) && !letters.contains(line)) {
+                letters.add(line);
+            }
+            line = next;
+        }
+        return letters.toArray(String[]::new);
+    }
+
+    private static long beat_spacing(int bpm) {
+        return (long) ((1e9 / bpm) * 60);
+    }
+
+    /** Converts a text chart into the binary format */
+    public static void compile(Path text, Path binary, String[] letters) throws IOException {
+        Beats beats = parse_beats(Files.readAllBytes(text), letters);
+        letters = beats.letters;
+
+        ByteArrayOutputStream[] data = new ByteArrayOutputStream[letters.length];
+        int offset = HEADER_SIZE + LANE_ENTRY_SIZE * letters.length;
+        ByteBuffer header = ByteBuffer.allocate(offset);
+        header.put(MAGIC).put(VERSION).putLong(beats.delay).putInt(beats.bpm).put((byte) letters.length);
+        for (int i = 0; i < letters.length; i++) {
+            long[] lane = beats.lanes[i] == null ? new long[0] : beats.lanes[i];
+            data[i] = new ByteArrayOutputStream();
+            long previous = 0;
+            for (long beat : lane) {
+                write_varint(data[i], zigzag(beat - previous));
+                previous = beat;
+            }
+            header.putChar(letters[i].charAt(0)).putInt(lane.length).putInt(offset).putInt(data[i].size());
+            offset += data[i].size();
+        }
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(binary))) {
+            out.write(header.array());
+            for (ByteArrayOutputStream lane : data) {
+                lane.writeTo(out);
+            }
+        }
+    }
+
+    /** Memory-maps a binary chart and decodes the requested lanes straight into spawn times */
+    public static Sheet load_binary(Path binary, String[] letters) throws IOException {
+        MappedByteBuffer buffer = map_binary(binary);
+        long delay = buffer.getLong();
+        int bpm = buffer.getInt();
+        int lane_count = buffer.get() & 0xFF;
+        long beat_spacing = beat_spacing(bpm);
+        letters = letters == null ? read_letters(buffer, lane_count) : letters;
+
+        long[][] lanes = new long[letters.length][];
+        for (int entry = 0; entry < lane_count; entry++) {
+            int lane = index_of(letters, String.valueOf(buffer.getChar()));
+            int count = buffer.getInt();
+            int offset = buffer.getInt();
+            check_lane(binary, buffer, count, offset, buffer.getInt());
+            if (lane < 0 || lanes[lane] != null) {
+                continue;
+            }
+            long[] times = new long[count];
+            Decoder decoder = new Decoder(buffer, offset, 0, delay, beat_spacing);
+            for (int i = 0; i < count; i++) {
+                times[i] = decoder.next();
+            }
+            lanes[lane] = times;
+        }
+        return new Sheet(delay, bpm, letters, lanes);
+    }
+
+    /** Memory-maps a binary chart and skims it for where its blocks start, leaving the decoding to the lanes it hands out; see {@code StreamedSheet} */
+    public static StreamedSheet stream_binary(Path binary, String[] letters) throws IOException {
+        MappedByteBuffer buffer = map_binary(binary);
+        long delay = buffer.getLong();
+        int bpm = buffer.getInt();
+        int lane_count = buffer.get() & 0xFF;
+        long beat_spacing = beat_spacing(bpm);
+        letters = letters == null ? read_letters(buffer, lane_count) : letters;
+
+        LaneIndex[] indexes = new LaneIndex[letters.length];
+        for (int entry = 0; entry < lane_count; entry++) {
+            int lane = index_of(letters, String.valueOf(buffer.getChar()));
+            int count = buffer.getInt();
+            int offset = buffer.getInt();
+            check_lane(binary, buffer, count, offset, buffer.getInt());
+            if (lane < 0 || indexes[lane] != null) {
+                continue;
+            }
+            indexes[lane] = new LaneIndex(new Decoder(buffer, offset, 0, delay, beat_spacing), count);
+        }
+        return new StreamedSheet(delay, bpm, letters, buffer, indexes);
+    }
+
+    /** Total number of notes in a binary chart, from its header */
+    public static int count_notes(Path binary) throws IOException {
+        MappedByteBuffer buffer = map_binary(binary);
+        int lane_count = buffer.get(HEADER_SIZE - 1) & 0xFF;
+        int count = 0;
+        for (int entry = 0; entry < lane_count; entry++) {
+            count += buffer.getInt(HEADER_SIZE + LANE_ENTRY_SIZE * entry + 2);
+        }
+        return count;
+    }
+
+    /** Maps a whole binary chart and checks its magic and version; the buffer is left just after them */
+    private static MappedByteBuffer map_binary(Path binary) throws IOException {
+        try (FileChannel channel = FileChannel.open(binary, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            for (byte b : MAGIC) {
+                if (buffer.get() != b) {
+                    throw new IOException(binary + " is not a binary chart");
+                }
+            }
+            if (buffer.get() != VERSION) {
+                throw new IOException(binary + " has an unknown chart version");
+            }
+            return buffer; // Stays mapped after the channel is closed
+        }
+    }
+
+    /** Makes sure a lane table entry fits in the file before anything is allocated for it; every note takes at least a byte, so a count can't be more than the length */
+    private static void check_lane(Path binary, ByteBuffer buffer, int count, int offset, int length) throws IOException {
+        if (count < 0 || offset < 0 || length < 0 || count > length || (long) offset + length > buffer.limit()) {
+            throw new IOException(binary + " has a lane of " + count + " notes in " + length + " bytes at " + offset + ", which doesn't fit");
+        }
+    }
+
+    /** Every lane's letter, in the order of the lane table */
+    private static String[] read_letters(ByteBuffer buffer, int lane_count) {
+        String[] letters = new String[lane_count];
+        for (int entry = 0; entry < lane_count; entry++) {
+            letters[entry] = String.valueOf(buffer.getChar(HEADER_SIZE + LANE_ENTRY_SIZE * entry));
+        }
+        return letters;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void write_varint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static int index_of(String[] letters, String line) {
+        for (int i = 0; i < letters.length; i++) {
+            if (letters[i].equals(line)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Beats straight out of a text chart, before they become spawn times */
+    private static class Beats {
+        private long delay;
+        private int bpm;
+        private String[] letters;
+        private long[][] lanes;
+
+        public Beats(long delay, int bpm, String[] letters, long[][] lanes) {
+            this.delay = delay;
+            this.bpm = bpm;
+            this.letters = letters;
+            this.lanes = lanes;
+        }
+    }
+
+    /** A {@code Sheet} is a parsed chart. Lanes absent from the file are empty. */
+    public static class Sheet {
+        private static long[] EMPTY = new long[0];
+
+        private long delay;
+        private int bpm;
+        private String[] letters;
+        private long[][] lanes;
+
+        public Sheet(long delay, int bpm, String[] letters, long[][] lanes) {
+            this.delay = delay;
+            this.bpm = bpm;
+            this.letters = letters;
+            this.lanes = lanes;
+            for (int i = 0; i < lanes.length; i++) {
+                if (lanes[i] == null) {
+                    lanes[i] = EMPTY;
+                }
+            }
+        }
+
+        // @formatter:off
+        public long get_delay() { return delay; }
+        public int get_bpm() { return bpm; }
+        public String[] get_letters() { return letters; }
+        public int get_lane_count() { return lanes.length; }
+        // @formatter:on
+
+        /** Total number of notes across every lane */
+        public int get_note_count() {
+            int count = 0;
+            for (long[] lane : lanes) {
+                count += lane.length;
+            }
+            return count;
+        }
+
+        /** Hands out a fresh view of the lane for a letter */
+        public Lane get_lane(String letter) {
+            int lane = index_of(letters, letter);
+            return new Lane(lane < 0 ? EMPTY : lanes[lane]);
+        }
+    }
+
+    /** A {@code Lane} reads one lane's spawn times front to back without copying them, and can jump to any time. */
+    public static class Lane {
+        private long[] times;
+        private int size;
+        private int cursor;
+
+        public Lane(long[] times) {
+            this.times = times;
+            this.size = times.length;
+            this.cursor = 0;
+        }
+
+        /** For lanes that keep their times somewhere else and override `get_time` */
+        Lane(int size) {
+            this.size = size;
+            this.cursor = 0;
+        }
+
+        // @formatter:off
+        public boolean has_next() { return cursor < size; }
+        public long peek() { return get_time(cursor); }
+        public long next() { return get_time(cursor++); }
+        public int size() { return size; }
+        public int remaining() { return size - cursor; }
+        public int get_position() { return cursor; }
+        public long get_time(int index) { return times[index]; }
+        // @formatter:on
+
+        /** Hands every spawn time to `action`, in order, without moving the cursor */
+        public void each_time(LongConsumer action) {
+            for (long time : times) {
+                action.accept(time);
+            }
+        }
+
+        /** Says no note before `index` will be read again (until a seek), so a lane that streams can let go of it */
+        public void release(int index) {
+        }
+
+        /** Index of the first spawn time at or after `time`, or the size if there is none; a binary search */
+        public int find(long time) {
+            return find(time, 0, size);
+        }
+
+        /** Moves the cursor so the next note is the first one at or after `time` */
+        public void seek(long time) {
+            cursor = find(time);
+        }
+
+        /** Index of the first spawn time at or after `time` between two indices, or `high` if there is none */
+        int find(long time, int low, int high) {
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (get_time(middle) < time) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+        A {@code StreamedSheet} is a binary chart that is still on disk, memory-mapped. It knows where every lane's blocks start, but not what's in them; its lanes decode those as they are needed.
+     */
+    public static class StreamedSheet extends Sheet {
+        private ByteBuffer buffer;
+        private LaneIndex[] indexes; // Null for lanes absent from the file
+
+        private StreamedSheet(long delay, int bpm, String[] letters, ByteBuffer buffer, LaneIndex[] indexes) {
+            super(delay, bpm, letters, new long[letters.length][]);
+            this.buffer = buffer;
+            this.indexes = indexes;
+        }
+
+        public int get_note_count() {
+            int count = 0;
+            for (LaneIndex index : indexes) {
+                count += index == null ? 0 : index.count;
+            }
+            return count;
+        }
+
+        /** Hands out a fresh lane for a letter, with its first window already decoded */
+        public Lane get_lane(String letter) {
+            int lane = index_of(get_letters(), letter);
+            if (lane < 0 || indexes[lane] == null || indexes[lane].count == 0) {
+                return new Lane(new long[0]);
+            }
+            return new StreamedLane(buffer, indexes[lane], get_delay(), beat_spacing(get_bpm()));
+        }
+    }
+
+    /**
+        A {@code StreamedLane} decodes its spawn times a block at a time. The blocks it holds are a {@code Window}, which never changes once made: only the refill makes new ones, one refill at a time, and it swaps the whole window in with one volatile write, so readers on any thread see either the old window or the new one and never half of each. A reader that still holds a block from a dropped window just reads on. A reader that finds a block missing (right after a seek, or if the refill is late) decodes it itself and keeps it as the lane's one recent block, another window of its own, which the next refill adopts rather than decoding it again.
+     */
+    public static class StreamedLane extends Lane {
+        private static long AHEAD = 4_000_000_000L; // Decoded past the fall, so the refill has time to run
+
+        private ByteBuffer buffer;
+        private LaneIndex index;
+        private long delay;
+        private long beat_spacing;
+        private volatile Window window; // Only the refill writes it
+        private volatile Window recent = new Window(0, new long[0][]); // The last block a reader had to decode itself
+        private AtomicBoolean refilling = new AtomicBoolean(false);
+        private volatile int floor = 0; // The first note that may still be read
+        private volatile int refilled_for = -1; // Block of the floor at the last refill
+        private AtomicInteger misses = new AtomicInteger(0);
+
+        private StreamedLane(ByteBuffer buffer, LaneIndex index, long delay, long beat_spacing) {
+            super(index.count);
+            this.buffer = buffer;
+            this.index = index;
+            this.delay = delay;
+            this.beat_spacing = beat_spacing;
+            this.window = new Window(0, new long[0][]);
+            refilled_for = 0;
+            refill();
+        }
+
+        // @formatter:off
+        public int get_misses() { return misses.get(); }
+        public int get_held() { return window.blocks.length; }
+        // @formatter:on
+
+        public long get_time(int note) {
+            long[] block = window.get(note >> LaneIndex.BLOCK_SHIFT);
+            if (block == null) {
+                block = miss(note >> LaneIndex.BLOCK_SHIFT);
+            }
+            return block[note & LaneIndex.BLOCK_MASK];
+        }
+
+        public void each_time(LongConsumer action) {
+            Decoder decoder = new Decoder(buffer, index.offsets[0], 0, delay, beat_spacing);
+            for (int i = 0; i < size(); i++) {
+                action.accept(decoder.next());
+            }
+        }
+
+        /** Moves the window up to (or back to) a note; once its block changes, the blocks ahead are decoded on a virtual thread */
+        public void release(int note) {
+            if (note != floor) {
+                floor = note;
+            }
+            int block = note >> LaneIndex.BLOCK_SHIFT;
+            if (block != refilled_for && refilling.compareAndSet(false, true)) {
+                refilled_for = block;
+                Thread.startVirtualThread(() -> {
+                    try {
+                        refill();
+                    } finally {
+                        refilling.set(false);
+                    }
+                });
+            }
+        }
+
+        /** Finds the block by its first time, then the note within it, so at most one block is decoded */
+        public int find(long time) {
+            int block = index.find_block(time); // First block starting at or after `time`
+            if (block == 0) {
+                return 0;
+            }
+            int low = (block - 1) << LaneIndex.BLOCK_SHIFT;
+            return find(time, low, Math.min(size(), block << LaneIndex.BLOCK_SHIFT));
+        }
+
+        /** Makes the window for the current floor out of the blocks already decoded and whatever else it needs, and swaps it in; one at a time */
+        private void refill() {
+            int floor_block = Math.min(floor >> LaneIndex.BLOCK_SHIFT, index.starts.length - 1);
+            int from = Math.max(0, floor_block - 1); // One behind, for readers a frame late
+            int to = floor_block;
+            if (floor_block + 1 < index.starts.length) { // Far enough for any floor within this block
+                long horizon = index.starts[floor_block + 1] + Engine.get_falling_time() + AHEAD;
+                to = Math.max(floor_block, index.find_block(horizon + 1) - 1);
+            }
+            Window held = window;
+            Window last = recent;
+            long[][] blocks = new long[to - from + 1][];
+            for (int block = from; block <= to; block++) {
+                long[] times = held.get(block);
+                if (times == null) {
+                    times = last.get(block);
+                }
+                blocks[block - from] = times == null ? decode(block) : times;
+            }
+            window = new Window(from, blocks);
+        }
+
+        /** A block outside the window; decoded once and kept as the recent block, since it is usually read again straight away */
+        private long[] miss(int block) {
+            long[] times = recent.get(block);
+            if (times == null) {
+                misses.incrementAndGet();
+                times = decode(block);
+                recent = new Window(block, new long[][] { times });
+            }
+            return times;
+        }
+
+        private long[] decode(int block) {
+            int first = block << LaneIndex.BLOCK_SHIFT;
+            long[] times = new long[Math.min(LaneIndex.BLOCK_SIZE, size() - first)];
+            Decoder decoder = new Decoder(buffer, index.offsets[block], index.beats[block], delay, beat_spacing);
+            for (int i = 0; i < times.length; i++) {
+                times[i] = decoder.next();
+            }
+            return times;
+        }
+    }
+
+    /** A {@code Window} is a run of decoded blocks of a lane, from block `first` on; it never changes once made. */
+    private static class Window {
+        private int first;
+        private long[][] blocks;
+
+        public Window(int first, long[][] blocks) {
+            this.first = first;
+            this.blocks = blocks;
+        }
+
+        /** A block's times, or null if it isn't in the window */
+        public long[] get(int block) {
+            int i = block - first;
+            return i >= 0 && i < blocks.length ? blocks[i] : null;
+        }
+    }
+
+    /** Where every block of a binary chart's lane starts: its byte offset, the beat before it, and its first spawn time */
+    private static class LaneIndex {
+        private static int BLOCK_SHIFT = 10;
+        private static int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+        private static int BLOCK_MASK = BLOCK_SIZE - 1;
+
+        private int count;
+        private int[] offsets;
+        private long[] beats;
+        private long[] starts;
+
+        /** Skims a lane of `count` notes from where the decoder is */
+        public LaneIndex(Decoder decoder, int count) {
+            int blocks = (count + BLOCK_SIZE - 1) >> BLOCK_SHIFT;
+            this.count = count;
+            this.offsets = new int[blocks];
+            this.beats = new long[blocks];
+            this.starts = new long[blocks];
+            for (int i = 0; i < count; i++) {
+                if ((i & BLOCK_MASK) == 0) {
+                    offsets[i >> BLOCK_SHIFT] = decoder.position;
+                    beats[i >> BLOCK_SHIFT] = decoder.beat;
+                    starts[i >> BLOCK_SHIFT] = decoder.next();
+                } else {
+                    decoder.skip();
+                }
+            }
+        }
+
+        /** The first block that starts at or after `time`, or the number of blocks if there is none */
+        public int find_block(long time) {
+            int low = 0;
+            int high = starts.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (starts[middle] < time) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /** Reads a lane of a binary chart one zigzag varint at a time, keeping the running beat */
+    private static class Decoder {
+        private ByteBuffer buffer;
+        private int position;
+        private long beat;
+        private long delay;
+        private long beat_spacing;
+
+        public Decoder(ByteBuffer buffer, int position, long beat, long delay, long beat_spacing) {
+            this.buffer = buffer;
+            this.position = position;
+            this.beat = beat;
+            this.delay = delay;
+            this.beat_spacing = beat_spacing;
+        }
+
+        /** The next spawn time */
+        public long next() {
+            skip();
+            return delay + beat_spacing * beat;
+        }
+
+        /** Moves past the next note, keeping track of its beat */
+        public void skip() {
+            long raw = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(position++);
+                raw |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            beat += (raw >>> 1) ^ -(raw & 1);
+        }
+    }
+
+    /** Splits raw bytes into lines and whitespace-separated tokens without building a String per number. */
+    private static class Tokenizer {
+        private byte[] bytes;
+        private int position;
+
+        public Tokenizer(byte[] bytes) {
+            this.bytes = bytes;
+            this.position = 0;
+        }
+
+        private static boolean is_blank(byte b) {
+            return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+        }
+
+        private void skip_blanks() {
+            while (position < bytes.length && is_blank(bytes[position])) {
+                position++;
+            }
+        }
+
+        public String next_token() {
+            skip_blanks();
+            int start = position;
+            while (position < bytes.length && !is_blank(bytes[position])) {
+                position++;
+            }
+            return new String(bytes, start, position - start, StandardCharsets.UTF_8);
+        }
+
+        public boolean has_next_line() {
+            return position < bytes.length;
+        }
+
+        /** Returns the rest of the current line (minus any carriage return) and moves past it */
+        public String next_line() {
+            int start = position;
+            while (position < bytes.length && bytes[position] != '\n') {
+                position++;
+            }
+            int end = position;
+            if (end > start && bytes[end - 1] == '\r') {
+                end--;
+            }
+            if (position < bytes.length) {
+                position++;
+            }
+            return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+        }
+
+        /** True if the next token is an optionally signed run of digits */
+        public boolean has_next_long() {
+            skip_blanks();
+            int i = position;
+            if (i < bytes.length && (bytes[i] == '-' || bytes[i] == '+')) {
+                i++;
+            }
+            int digits = i;
+            while (i < bytes.length && bytes[i] >= '0' && bytes[i] <= '9') {
+                i++;
+            }
+            return i > digits && (i == bytes.length || is_blank(bytes[i]));
+        }
+
+        public long next_long() {
+            skip_blanks();
+            boolean negative = bytes[position] == '-';
+            if (bytes[position] == '-' || bytes[position] == '+') {
+                position++;
+            }
+            long value = 0;
+            while (position < bytes.length && bytes[position] >= '0' && bytes[position] <= '9') {
+                value = value * 10 + (bytes[position++] - '0');
+            }
+            return negative ? -value : value;
+        }
+    }
+}
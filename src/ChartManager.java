@@ -12,7 +12,7 @@ import javafx.scene.paint.Stop;
 import javafx.scene.shape.Rectangle;
 
 /**
-    A {@code ChartManager} is the high-level interface for managing charts. Calling `distribute_timestep` will have it tell its children to poll the messenger and figure out what they're supposed to look like.
+    A {@code ChartManager} is the high-level interface for managing charts. Calling `distribute_timestep` will have it tell its children to poll the messenger and figure out what they're supposed to look like, which they only bother doing when the score has changed.
 
     A {@code Chart} is a graphic used for displaying either statistical power (the chance that if there was a note, you hit it) or significance (the chance that if you hit, you hit a note and not thin air). It consists of a background, partial cover, outline, and label.
  */
@@ -53,6 +53,7 @@ class Chart extends StackPane {
 
     private Mini.ChartType chart_type;
     private Rectangle cover;
+    private Scoreboard.Snapshot shown; // Snapshots are immutable, so a new one is the only sign the score changed
 
     public Chart(Mini.ChartType chart_type) {
         this.chart_type = chart_type;
@@ -64,11 +65,16 @@ class Chart extends StackPane {
                 create_label());
     }
 
-    /** Calculates and updates fraction of chart blocked */
+    /** Calculates and updates fraction of chart blocked, if the score changed since last time */
     public void handle_timestep() {
-        double num_hits = (double) Mini.Messenger.get_hits();
-        double num_misses = (double) Mini.Messenger.get_misses();
-        double num_losses = (double) Mini.Messenger.get_losses();
+        Scoreboard.Snapshot snapshot = Mini.Messenger.get_snapshot(); // One read, so the three agree
+        if (snapshot == shown) {
+            return;
+        }
+        shown = snapshot;
+        double num_hits = (double) snapshot.get_hits();
+        double num_misses = (double) snapshot.get_misses();
+        double num_losses = (double) snapshot.get_losses();
 
         double fraction;
         if (num_hits <= 0.1) { // Prevent zero division error
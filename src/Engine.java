@@ -0,0 +1,409 @@
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+    The {@code Engine} is the game without the graphics: it spawns notes from a chart, judges keypresses against them, loses the ones nobody pressed, and keeps score. It knows nothing about JavaFX, so it can be driven by the {@link GameClock} in the game or by a simulated clock in {@link Headless}, as fast as the machine allows. The Managers are views over it; {@link NoteManager}s draw whatever notes are live in their lane.
+
+    Time is read from an injected {@code Clock} once per `tick`, and normally only goes forwards. `seek` is for when it doesn't (practice mode, see {@link Practice}): it puts every lane where it would be had the song been played up to the clock's time, with every note that could still be hit live again, in a binary search per lane. Notes spawn by the visual time (so they are drawn from the right place) and are judged and lost by the song time. A note is live from when it spawns until it is pressed or leaves the widest judgement window. Its position is a pure function of time, see `get_fall_fraction`.
+
+    Every outcome is tallied twice: in the {@code Score}, which belongs to whichever thread runs the engine and sums up the timing errors, and on a {@link Scoreboard}, which any thread can read. Spawns and judgements are also emitted as {@link Flight} events.
+
+    The engine is also an {@code EngineState}: what the {@link NoteManager}s need to draw it. When a {@link Simulation} runs the engine on another thread, they draw its frames instead, which are the same thing copied out.
+
+    Which notes are resolved is kept per lane in a {@code Resolved}: every note before the first live one is, and only the live ones after it have a bit each, in a ring that moves along with the lane. Neither it nor the score grows with the length of the chart, so an hour long marathon costs what a song does (see {@link ChartLoader} for the chart itself), and a seek only clears the few bits that were live.
+
+    A {@code Judgement} is how close to its note a keypress was. A {@code Score} adds judgements up.
+ */
+public class Engine implements EngineState {
+    private static double FALLING_TIME_SEC = 2;
+    private static double TARGET_FRACTION = 0.925; // How far down its fall a note crosses the target
+
+    /** A {@code Clock} tells the engine what time it is, in nanoseconds since the song started. */
+    public interface Clock {
+        long get_song_time();
+
+        long get_visual_time();
+    }
+
+    private Clock clock;
+    private Score score;
+    private Scoreboard scoreboard;
+    private String[] letters;
+    private ChartLoader.Lane[] lanes;
+    private int[] first_live;
+    private Resolved[] resolved;
+    private long song_time;
+    private long visual_time;
+    private int seeks = 0;
+
+    public Engine(ChartLoader.Sheet sheet, Clock clock) {
+        this.clock = clock;
+        this.score = new Score();
+        this.scoreboard = new Scoreboard();
+        this.letters = sheet.get_letters();
+        this.lanes = new ChartLoader.Lane[letters.length];
+        this.first_live = new int[letters.length];
+        this.resolved = new Resolved[letters.length];
+        for (int lane = 0; lane < letters.length; lane++) {
+            lanes[lane] = sheet.get_lane(letters[lane]);
+            resolved[lane] = new Resolved();
+        }
+    }
+
+    // @formatter:off
+    public static long get_falling_time() { return (long) (FALLING_TIME_SEC * 1e9); }
+    public static long get_travel_time() { return (long) (FALLING_TIME_SEC * 1e9 * TARGET_FRACTION); }
+    public Score get_score() { return score; }
+    public Scoreboard get_scoreboard() { return scoreboard; }
+    public String[] get_letters() { return letters; }
+    public int get_lane_count() { return lanes.length; }
+    public int get_note_count(int lane) { return lanes[lane].size(); }
+    public long get_time(int lane, int index) { return lanes[lane].get_time(index); }
+    public void each_time(int lane, LongConsumer action) { lanes[lane].each_time(action); }
+    public int get_spawned(int lane) { return lanes[lane].get_position(); }
+    public int get_first_live(int lane) { return first_live[lane]; }
+    public boolean is_resolved(int lane, int index) { return resolved[lane].get(index); }
+    public int next_resolved(int lane, int from) { return resolved[lane].next(from, lanes[lane].get_position()); }
+    public long get_song_time() { return song_time; }
+    public long get_visual_time() { return visual_time; }
+    public int get_seeks() { return seeks; }
+    // @formatter:on
+
+    /** How far along its fall a note that spawned at `spawn_time` is at `time`; 0 at the top, 1 at the bottom */
+    public static double get_fall_fraction(long spawn_time, long time) {
+        return (double) (time - spawn_time) / FALLING_TIME_SEC / 1e9;
+    }
+
+    /** True once every note of every lane has been pressed or lost */
+    public boolean is_finished() {
+        for (int lane = 0; lane < lanes.length; lane++) {
+            if (first_live[lane] < lanes[lane].size()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Reads the clock, spawns every note that has come due and loses every note that can no longer be hit */
+    public void tick() {
+        song_time = clock.get_song_time();
+        visual_time = clock.get_visual_time();
+        for (int lane = 0; lane < lanes.length; lane++) {
+            ChartLoader.Lane chart = lanes[lane];
+            while (chart.has_next() && chart.peek() < visual_time) {
+                Flight.spawn(lane, chart.next(), visual_time);
+            }
+        }
+        lose_expired(song_time);
+    }
+
+    /** Jumps to wherever the clock is now, backwards or forwards: notes that would have spawned by then have, and those that can still be hit are live and unresolved */
+    public void seek() {
+        song_time = clock.get_song_time();
+        visual_time = clock.get_visual_time();
+        long last_chance = song_time - get_travel_time() - Judgement.get_widest_window();
+        for (int lane = 0; lane < lanes.length; lane++) {
+            ChartLoader.Lane chart = lanes[lane];
+            chart.seek(visual_time);
+            first_live[lane] = Math.min(chart.find(last_chance), chart.get_position());
+            resolved[lane].rebase(first_live[lane]); // Those before it are skipped, not lost
+            chart.release(first_live[lane]);
+        }
+        seeks++;
+    }
+
+    /** Loses every spawned note whose last chance to be hit was before a song time */
+    private void lose_expired(long time) {
+        long last_chance = time - get_travel_time() - Judgement.get_widest_window();
+        for (int lane = 0; lane < lanes.length; lane++) {
+            ChartLoader.Lane chart = lanes[lane];
+            int spawned = chart.get_position();
+            int first = first_live[lane];
+            while (first < spawned && (resolved[lane].get(first) || chart.get_time(first) < last_chance)) {
+                if (!resolved[lane].get(first)) {
+                    score.add_loss();
+                    scoreboard.publish(Scoreboard.LOST, lane, 0, time);
+                    Flight.judgement(lane, "Lost", 0, time);
+                }
+                first++;
+            }
+            first_live[lane] = first;
+            resolved[lane].advance(first);
+            chart.release(first);
+        }
+    }
+
+    /**
+        Judges a keypress on a lane at a song time. Returns null for a press on thin air (nothing within the widest window), otherwise the judgement; a press that lands in the miss window still uses up the note, but counts as a loss.
+     */
+    public Judgement strike(int lane, long time) {
+        lose_expired(time); // So the combo doesn't depend on whether a frame came between the deadline and the press
+        int index = find_nearest_note(lane, time);
+        if (index < 0) {
+            score.add_miss();
+            scoreboard.publish(Scoreboard.THIN_AIR, lane, 0, time);
+            Flight.judgement(lane, "Thin air", 0, time);
+            return null;
+        }
+
+        long error = time - (get_time(lane, index) + get_travel_time());
+        Judgement judgement = Judgement.of(error);
+        resolved[lane].set(index);
+        score.add_judgement(judgement, error);
+        scoreboard.publish(judgement.ordinal(), lane, error, time);
+        Flight.judgement(lane, judgement.toString(), error, time);
+        if (judgement == Judgement.MISS) {
+            score.add_loss();
+        } else {
+            score.add_hit();
+        }
+        return judgement;
+    }
+
+    /** Chart index of the spawned, unresolved note closest to a song time within the widest window, or -1 */
+    private int find_nearest_note(int lane, long time) {
+        ChartLoader.Lane times = lanes[lane];
+        long target = time - get_travel_time();
+        long window = Judgement.get_widest_window();
+        int first = first_live[lane];
+        int spawned = get_spawned(lane);
+
+        int low = times.find(target, first, spawned);
+
+        int best = -1;
+        for (int i = low - 1; i >= first && target - times.get_time(i) <= window; i--) {
+            if (!resolved[lane].get(i)) {
+                best = i;
+                break;
+            }
+        }
+        for (int i = low; i < spawned && times.get_time(i) - target <= window; i++) {
+            if (!resolved[lane].get(i)) {
+                if (best < 0 || times.get_time(i) - target < target - times.get_time(best)) {
+                    best = i;
+                }
+                break;
+            }
+        }
+        return best;
+    }
+
+    /**
+        The {@code Judgement} enum is of how close to its note a keypress was. Windows are in milliseconds either side of the note; change them with `--windows=perfect,great,good,miss`.
+     */
+    public enum Judgement {
+        PERFECT("Perfect", 40),
+        GREAT("Great", 80),
+        GOOD("Good", 130),
+        MISS("Miss", 180);
+
+        private static long MAX_WINDOW_MS = 60_000; // Anything wider is no window at all
+
+        private String name;
+        private long window; // Nanoseconds
+
+        Judgement(String name, long window_ms) {
+            this.name = name;
+            this.window = window_ms * 1_000_000L;
+        }
+
+        // @formatter:off
+        public long get_window() { return window; }
+        public static long get_widest_window() { return MISS.window; }
+        // @formatter:on
+
+        /** The tightest judgement whose window holds a signed error in nanoseconds, or null if none does */
+        public static Judgement of(long error) {
+            long distance = Math.abs(error);
+            for (Judgement judgement : values()) {
+                if (distance <= judgement.window) {
+                    return judgement;
+                }
+            }
+            return null;
+        }
+
+        /** Sets the windows from a comma separated list of widening millisecond values; a bad list changes nothing */
+        public static void configure(String windows) {
+            if (windows == null) {
+                return;
+            }
+            long[] parsed = parse(windows);
+            Judgement[] judgements = values();
+            for (int i = 0; i < judgements.length; i++) {
+                judgements[i].window = parsed[i];
+            }
+        }
+
+        /** Throws an IllegalArgumentException unless `configure` would take a list of windows */
+        public static void check(String windows) {
+            parse(windows);
+        }
+
+        /** The windows in nanoseconds, once every one of them has been checked */
+        private static long[] parse(String windows) {
+            String[] parts = windows.split(",");
+            if (parts.length != values().length) {
+                throw new IllegalArgumentException("Expected " + values().length + " windows, got " + windows);
+            }
+            long[] parsed = new long[parts.length];
+            long previous = 0;
+            for (int i = 0; i < parts.length; i++) {
+                long window_ms = Long.parseLong(parts[i].trim());
+                if (window_ms <= previous) {
+                    throw new IllegalArgumentException("Windows must widen: " + windows);
+                }
+                if (window_ms > MAX_WINDOW_MS) {
+                    throw new IllegalArgumentException("Windows must be at most " + MAX_WINDOW_MS + " ms: " + windows);
+                }
+                parsed[i] = window_ms * 1_000_000L;
+                previous = window_ms;
+            }
+            return parsed;
+        }
+
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+        A {@code Score} counts hits (notes pressed in time), misses (presses on thin air), losses (notes never pressed, or pressed way off) and the current combo, along with how every press on a note was judged. Timing errors are summed up rather than kept: a running sum and sum of squares for the mean and standard deviation, and a {@link Histogram} each of how early and how late presses were, for percentiles.
+     */
+    public static class Score {
+        private int hits = 0;
+        private int misses = 0;
+        private int losses = 0;
+        private int combo = 0;
+        private int[] judgements = new int[Judgement.values().length];
+        private int error_count = 0;
+        private long error_sum = 0; // Nanoseconds, positive when late
+        private double error_square_sum = 0; // A long would overflow after a few thousand wide errors
+        private Histogram early = new Histogram();
+        private Histogram late = new Histogram();
+
+        // @formatter:off
+        public void add_hit() { hits++; combo++; }
+        public void add_miss() { misses++; }
+        public void add_loss() { losses++; combo = 0; }
+        public int get_hits() { return hits; }
+        public int get_misses() { return misses; }
+        public int get_losses() { return losses; }
+        public int get_combo() { return combo; }
+        public int get_judgement_count(Judgement judgement) { return judgements[judgement.ordinal()]; }
+        public int get_error_count() { return error_count; }
+        public Histogram get_early_errors() { return early; }
+        public Histogram get_late_errors() { return late; }
+        // @formatter:on
+
+        /** Mean signed timing error in nanoseconds, positive when late on average */
+        public double get_mean_error() {
+            return error_count == 0 ? 0 : (double) error_sum / error_count;
+        }
+
+        /** Standard deviation of the timing errors in nanoseconds */
+        public double get_error_deviation() {
+            if (error_count == 0) {
+                return 0;
+            }
+            double mean = get_mean_error();
+            return Math.sqrt(Math.max(0, error_square_sum / error_count - mean * mean));
+        }
+
+        /** Records how a press on a note was judged and how far off it was */
+        public void add_judgement(Judgement judgement, long error) {
+            judgements[judgement.ordinal()]++;
+            error_count++;
+            error_sum += error;
+            error_square_sum += (double) error * error;
+            if (error < 0) {
+                early.record(-error);
+            } else {
+                late.record(error);
+            }
+        }
+    }
+
+    /**
+        A {@code Resolved} is which notes of a lane are resolved: every one before an offset (the first live note), plus any after it whose bit is set. The bits are a ring indexed by chart index, so a note's bit is cleared as the offset passes it and reused by a note further on. The ring only grows if more notes are live at once than it has bits, which depends on how dense the chart is rather than how long.
+     */
+    static class Resolved {
+        private long[] ring = new long[1]; // A power of two of words
+        private int offset = 0;
+
+        /** True if a note is resolved */
+        public boolean get(int index) {
+            if (index < offset) {
+                return true;
+            }
+            if (index - offset >= capacity()) {
+                return false;
+            }
+            return (ring[word(index)] & (1L << index)) != 0;
+        }
+
+        /** Resolves a note at or after the offset */
+        public void set(int index) {
+            if (index < offset) {
+                return;
+            }
+            while (index - offset >= capacity()) {
+                grow();
+            }
+            ring[word(index)] |= 1L << index;
+        }
+
+        /** The first resolved note at or after `from` and before `until`, or -1; notes before the offset don't count, since they are all resolved */
+        public int next(int from, int until) {
+            int end = Math.min(until, offset + capacity());
+            for (int index = Math.max(from, offset); index < end; index++) {
+                long bits = ring[word(index)] >>> index; // Shifts wrap at 64, so this is the bits from `index` up
+                if (bits == 0) {
+                    index |= 63; // None left in this word
+                } else {
+                    index += Long.numberOfTrailingZeros(bits);
+                    return index < end ? index : -1;
+                }
+            }
+            return -1;
+        }
+
+        /** Moves the offset up to a note, clearing the bits it passes so they can be reused */
+        public void advance(int to) {
+            if (to - offset >= capacity()) {
+                Arrays.fill(ring, 0);
+            } else {
+                for (int index = offset; index < to; index++) {
+                    ring[word(index)] &= ~(1L << index);
+                }
+            }
+            offset = Math.max(offset, to);
+        }
+
+        /** Forgets every bit and starts again at a note, after a seek either way */
+        public void rebase(int to) {
+            Arrays.fill(ring, 0);
+            offset = to;
+        }
+
+        private int capacity() {
+            return ring.length << 6;
+        }
+
+        private int word(int index) {
+            return (index >>> 6) & (ring.length - 1);
+        }
+
+        /** Doubles the ring, moving every bit after the offset to where it now belongs */
+        private void grow() {
+            long[] old = ring;
+            int old_capacity = capacity();
+            ring = new long[old.length * 2];
+            for (int index = offset; index < offset + old_capacity; index++) {
+                if ((old[(index >>> 6) & (old.length - 1)] & (1L << index)) != 0) {
+                    ring[word(index)] |= 1L << index;
+                }
+            }
+        }
+    }
+}
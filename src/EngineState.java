@@ -0,0 +1,18 @@
+/**
+    An {@code EngineState} is which notes have spawned and which are resolved, as of some time: everything a {@link NoteManager} needs to draw the game. The {@link Engine} is one, and so is each {@link Simulation.Frame}, which is the engine's state copied out for the FX thread.
+ */
+public interface EngineState {
+    long get_song_time();
+
+    long get_visual_time();
+
+    int get_spawned(int lane);
+
+    boolean is_resolved(int lane, int index);
+
+    boolean is_finished();
+
+    int get_first_live(int lane);
+
+    int get_seeks(); // Goes up every time the engine jumps in time
+}
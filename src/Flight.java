@@ -0,0 +1,432 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+    {@code Flight} holds the Java Flight Recorder events the game emits, and a tool to make sense of a recording of them. Events cost next to nothing unless a recording is running, so they are always on; start one with e.g. `java -XX:StartFlightRecording=filename=yuri.jfr ...` (this works for {@link Headless} too).
+
+    A {@code FrameEvent} is one frame of the timer in "Yuri.java", with how long each stage took. A {@code SpawnEvent} is a note spawning in the {@link Engine}, with when it was due and the visual time it actually spawned at; the difference is how late it was. A {@code JudgementEvent} is a keypress (or a note going by unpressed) and how it was judged. A {@code SparkleEvent} is a sparkle burst. A {@code QualityEvent} is the {@link QualityGovernor} changing tier.
+
+    Usage: `java Flight <recording.jfr> [--stall=<factor>]` reports spawn lateness per lane, the distribution of judgement timing errors, every change of quality tier, and frame stalls (frames whose interval is more than `factor`, default 1.5, times the median) along with whether spawns and judgements around them were worse than elsewhere.
+ */
+public class Flight {
+    private static double DEFAULT_STALL_FACTOR = 1.5;
+    private static long STALL_SHADOW = 100_000_000L; // How long after a stall events count as near it
+    private static int ERROR_BIN_MS = 10;
+
+    @Name("yuri.Frame")
+    @Label("Frame")
+    @Category("Yuri")
+    @Description("One frame of the universal timer")
+    @StackTrace(false)
+    public static class FrameEvent extends Event {
+        @Label("Interval")
+        @Timespan(Timespan.NANOSECONDS)
+        public long interval;
+
+        @Label("Clock")
+        @Timespan(Timespan.NANOSECONDS)
+        public long clock;
+
+        @Label("Gameplay")
+        @Timespan(Timespan.NANOSECONDS)
+        public long gameplay;
+
+        @Label("Charts")
+        @Timespan(Timespan.NANOSECONDS)
+        public long charts;
+
+        @Label("Labels")
+        @Timespan(Timespan.NANOSECONDS)
+        public long labels;
+
+        @Label("Sparkles")
+        @Timespan(Timespan.NANOSECONDS)
+        public long sparkles;
+
+        @Label("Song Time")
+        @Timespan(Timespan.NANOSECONDS)
+        public long song_time;
+    }
+
+    @Name("yuri.Spawn")
+    @Label("Spawn")
+    @Category("Yuri")
+    @Description("A note spawning, with when it was due and when it actually spawned (visual time)")
+    @StackTrace(false)
+    public static class SpawnEvent extends Event {
+        @Label("Lane")
+        public int lane;
+
+        @Label("Scheduled")
+        @Timespan(Timespan.NANOSECONDS)
+        public long scheduled;
+
+        @Label("Actual")
+        @Timespan(Timespan.NANOSECONDS)
+        public long actual;
+    }
+
+    @Name("yuri.Judgement")
+    @Label("Judgement")
+    @Category("Yuri")
+    @Description("A keypress, or a note going by unpressed, and how it was judged")
+    @StackTrace(false)
+    public static class JudgementEvent extends Event {
+        @Label("Lane")
+        public int lane;
+
+        @Label("Outcome")
+        @Description("A judgement, \"Thin air\" for a press with no note near it, or \"Lost\" for a note nobody pressed")
+        public String outcome;
+
+        @Label("Error")
+        @Description("Press time minus note time, positive when late; zero unless a note was pressed")
+        @Timespan(Timespan.NANOSECONDS)
+        public long error;
+
+        @Label("Song Time")
+        @Timespan(Timespan.NANOSECONDS)
+        public long song_time;
+    }
+
+    @Name("yuri.Sparkle")
+    @Label("Sparkle")
+    @Category("Yuri")
+    @Description("A sparkle burst")
+    @StackTrace(false)
+    public static class SparkleEvent extends Event {
+        @Label("Streams")
+        public int streams;
+
+        @Label("Points")
+        public int points;
+
+        @Label("Evicted")
+        @Description("Older streams evicted to make room")
+        public int evicted;
+    }
+
+    @Name("yuri.Quality")
+    @Label("Quality")
+    @Category("Yuri")
+    @Description("The quality governor changing tier")
+    @StackTrace(false)
+    public static class QualityEvent extends Event {
+        @Label("From")
+        public String from;
+
+        @Label("To")
+        public String to;
+
+        @Label("Dropped")
+        @Description("Share of frames dropped in the half second before the change")
+        public double dropped;
+    }
+
+    /** Records a frame; stage durations are indexed by {@link ProfilerManager.Stage} */
+    public static void frame(long interval, long[] stages, long song_time) {
+        FrameEvent event = new FrameEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.interval = interval;
+        event.clock = stages[ProfilerManager.Stage.CLOCK.ordinal()];
+        event.gameplay = stages[ProfilerManager.Stage.GAMEPLAY.ordinal()];
+        event.charts = stages[ProfilerManager.Stage.CHARTS.ordinal()];
+        event.labels = stages[ProfilerManager.Stage.LABELS.ordinal()];
+        event.sparkles = stages[ProfilerManager.Stage.SPARKLES.ordinal()];
+        event.song_time = song_time;
+        event.commit();
+    }
+
+    /** Records a note spawning on a lane at a visual time, when it was due at another */
+    public static void spawn(int lane, long scheduled, long actual) {
+        SpawnEvent event = new SpawnEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.lane = lane;
+        event.scheduled = scheduled;
+        event.actual = actual;
+        event.commit();
+    }
+
+    /** Records how a press (or a note nobody pressed) on a lane was judged */
+    public static void judgement(int lane, String outcome, long error, long song_time) {
+        JudgementEvent event = new JudgementEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.lane = lane;
+        event.outcome = outcome;
+        event.error = error;
+        event.song_time = song_time;
+        event.commit();
+    }
+
+    /** Records a sparkle burst */
+    public static void sparkle(int streams, int points, int evicted) {
+        SparkleEvent event = new SparkleEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.streams = streams;
+        event.points = points;
+        event.evicted = evicted;
+        event.commit();
+    }
+
+    /** Records a change of quality tier, with the share of frames that dropped just before it */
+    public static void quality(String from, String to, double dropped) {
+        QualityEvent event = new QualityEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.from = from;
+        event.to = to;
+        event.dropped = dropped;
+        event.commit();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java Flight <recording.jfr> [--stall=<factor>]");
+            System.exit(1);
+        }
+        double stall_factor = DEFAULT_STALL_FACTOR;
+        for (String arg : args) {
+            if (arg.startsWith("--stall=")) {
+                stall_factor = Double.parseDouble(arg.substring("--stall=".length()));
+            }
+        }
+
+        List<RecordedEvent> frames = new ArrayList<>();
+        List<RecordedEvent> spawns = new ArrayList<>();
+        List<RecordedEvent> judgements = new ArrayList<>();
+        List<RecordedEvent> qualities = new ArrayList<>();
+        int sparkle_count = 0;
+        long evicted = 0;
+        for (RecordedEvent event : RecordingFile.readAllEvents(Path.of(args[0]))) {
+            switch (event.getEventType().getName()) {
+                case "yuri.Frame" -> frames.add(event);
+                case "yuri.Spawn" -> spawns.add(event);
+                case "yuri.Judgement" -> judgements.add(event);
+                case "yuri.Sparkle" -> {
+                    sparkle_count++;
+                    evicted += event.getInt("evicted");
+                }
+                case "yuri.Quality" -> qualities.add(event);
+                default -> {}
+            }
+        }
+        System.out.printf("%d frames, %d spawns, %d judgements, %d sparkles (%d streams evicted)%n%n",
+                frames.size(), spawns.size(), judgements.size(), sparkle_count, evicted);
+
+        long[] stalls = report_frames(frames, stall_factor);
+        report_qualities(qualities);
+        report_spawns(spawns, stalls);
+        report_judgements(judgements, stalls);
+    }
+
+    /** Prints frame interval percentiles and the stalls; returns the song times the stalls ended at, sorted */
+    private static long[] report_frames(List<RecordedEvent> frames, double stall_factor) {
+        if (frames.isEmpty()) {
+            System.out.println("No frames recorded (the game wasn't running, e.g. a Headless recording)\n");
+            return new long[0];
+        }
+        long[] intervals = new long[frames.size()];
+        for (int i = 0; i < intervals.length; i++) {
+            intervals[i] = frames.get(i).getLong("interval");
+        }
+        long[] sorted = intervals.clone();
+        Arrays.sort(sorted);
+        long median = percentile(sorted, 0.5);
+        System.out.printf("Frame interval: p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                median / 1e6, percentile(sorted, 0.99) / 1e6, sorted[sorted.length - 1] / 1e6);
+
+        String[] stages = { "clock", "gameplay", "charts", "labels", "sparkles" };
+        int[] blamed = new int[stages.length + 1];
+        long[] stalls = new long[frames.size()];
+        int stall_count = 0;
+        for (RecordedEvent frame : frames) {
+            if (frame.getLong("interval") <= median * stall_factor) {
+                continue;
+            }
+            stalls[stall_count++] = frame.getLong("song_time");
+            // Blame the slowest stage, or rendering and everything else if the stages add up to under half the median
+            long handled = 0;
+            int slowest = stages.length;
+            long slowest_time = median / 2;
+            for (int i = 0; i < stages.length; i++) {
+                long time = frame.getLong(stages[i]);
+                handled += time;
+                if (time > slowest_time) {
+                    slowest = i;
+                    slowest_time = time;
+                }
+            }
+            if (handled < median / 2) {
+                slowest = stages.length;
+            }
+            blamed[slowest]++;
+        }
+        System.out.printf("Stalls (interval over %.1fx the median): %d%n", stall_factor, stall_count);
+        for (int i = 0; i < blamed.length; i++) {
+            if (blamed[i] > 0) {
+                System.out.printf("  %-30s %d%n", i < stages.length ? stages[i] : "rendering or outside the timer", blamed[i]);
+            }
+        }
+        System.out.println();
+        stalls = Arrays.copyOf(stalls, stall_count);
+        Arrays.sort(stalls);
+        return stalls;
+    }
+
+    /** Prints every change of quality tier, in order */
+    private static void report_qualities(List<RecordedEvent> qualities) {
+        if (qualities.isEmpty()) {
+            return;
+        }
+        qualities.sort((a, b) -> a.getStartTime().compareTo(b.getStartTime()));
+        Instant first = qualities.getFirst().getStartTime();
+        System.out.printf("Quality changes: %d%n", qualities.size());
+        for (RecordedEvent quality : qualities) {
+            System.out.printf("  %+8.1f s  %-8s -> %-8s (%.0f%% of frames dropped)%n",
+                    Duration.between(first, quality.getStartTime()).toMillis() / 1e3,
+                    quality.getString("from"),
+                    quality.getString("to"),
+                    quality.getDouble("dropped") * 100);
+        }
+        System.out.println();
+    }
+
+    /** Prints how late spawns were per lane, and near stalls compared to elsewhere */
+    private static void report_spawns(List<RecordedEvent> spawns, long[] stalls) {
+        if (spawns.isEmpty()) {
+            return;
+        }
+        int lanes = 0;
+        for (RecordedEvent spawn : spawns) {
+            lanes = Math.max(lanes, spawn.getInt("lane") + 1);
+        }
+        System.out.println("Spawn lateness (actual - scheduled):");
+        Histogram near = new Histogram();
+        Histogram away = new Histogram();
+        for (int lane = 0; lane < lanes; lane++) {
+            Histogram histogram = new Histogram();
+            for (RecordedEvent spawn : spawns) {
+                if (spawn.getInt("lane") != lane) {
+                    continue;
+                }
+                long actual = spawn.getLong("actual");
+                long lateness = actual - spawn.getLong("scheduled");
+                histogram.record(lateness);
+                (is_near_stall(stalls, actual) ? near : away).record(lateness);
+            }
+            System.out.printf("  lane %d: %s%n", lane, summarize(histogram));
+        }
+        if (stalls.length > 0) {
+            System.out.printf("  near stalls: %s%n  elsewhere:   %s%n", summarize(near), summarize(away));
+        }
+        System.out.println();
+    }
+
+    /** Prints outcomes, the distribution of timing errors, and mean absolute error near stalls compared to elsewhere */
+    private static void report_judgements(List<RecordedEvent> judgements, long[] stalls) {
+        if (judgements.isEmpty()) {
+            return;
+        }
+        List<String> outcomes = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        long[] errors = new long[judgements.size()];
+        int error_count = 0;
+        double near_sum = 0;
+        int near_count = 0;
+        double away_sum = 0;
+        int away_count = 0;
+        for (RecordedEvent judgement : judgements) {
+            String outcome = judgement.getString("outcome");
+            int index = outcomes.indexOf(outcome);
+            if (index < 0) {
+                outcomes.add(outcome);
+                counts.add(0);
+                index = outcomes.size() - 1;
+            }
+            counts.set(index, counts.get(index) + 1);
+            if (outcome.equals("Thin air") || outcome.equals("Lost")) {
+                continue;
+            }
+            long error = judgement.getLong("error");
+            errors[error_count++] = error;
+            if (is_near_stall(stalls, judgement.getLong("song_time"))) {
+                near_sum += Math.abs(error);
+                near_count++;
+            } else {
+                away_sum += Math.abs(error);
+                away_count++;
+            }
+        }
+
+        System.out.println("Judgements:");
+        for (int i = 0; i < outcomes.size(); i++) {
+            System.out.printf("  %-10s %d%n", outcomes.get(i), counts.get(i));
+        }
+        if (error_count == 0) {
+            return;
+        }
+        errors = Arrays.copyOf(errors, error_count);
+        Arrays.sort(errors);
+        System.out.printf("Timing error: p1 %.1f ms, p50 %.1f ms, p99 %.1f ms%n",
+                percentile(errors, 0.01) / 1e6, percentile(errors, 0.5) / 1e6, percentile(errors, 0.99) / 1e6);
+
+        long bin = ERROR_BIN_MS * 1_000_000L;
+        long first = Math.floorDiv(errors[0], bin);
+        int[] bins = new int[(int) (Math.floorDiv(errors[error_count - 1], bin) - first + 1)];
+        for (long error : errors) {
+            bins[(int) (Math.floorDiv(error, bin) - first)]++;
+        }
+        int tallest = Arrays.stream(bins).max().orElse(1);
+        for (int i = 0; i < bins.length; i++) {
+            System.out.printf("  %+5d ms %6d %s%n",
+                    (first + i) * ERROR_BIN_MS, bins[i], "#".repeat((int) Math.ceil(40.0 * bins[i] / tallest)));
+        }
+        if (stalls.length > 0) {
+            System.out.printf("Mean absolute error near stalls %.1f ms (%d presses), elsewhere %.1f ms (%d presses)%n",
+                    near_count == 0 ? 0 : near_sum / near_count / 1e6, near_count,
+                    away_count == 0 ? 0 : away_sum / away_count / 1e6, away_count);
+        }
+    }
+
+    /** True if a song time is at most STALL_SHADOW after the end of a stall */
+    private static boolean is_near_stall(long[] stalls, long time) {
+        int index = Arrays.binarySearch(stalls, time);
+        int before = index >= 0 ? index : -index - 2;
+        return before >= 0 && time - stalls[before] <= STALL_SHADOW;
+    }
+
+    private static String summarize(Histogram histogram) {
+        return String.format("p50 %.2f ms, p99 %.2f ms, max %.2f ms (%d)",
+                histogram.get_percentile(0.5) / 1e6,
+                histogram.get_percentile(0.99) / 1e6,
+                histogram.get_max() / 1e6,
+                histogram.get_count());
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+}
@@ -0,0 +1,129 @@
+import java.util.function.LongSupplier;
+
+/**
+    The {@code GameClock} is the one clock every timing decision in the game reads from (the {@link Engine} reads it through its Clock interface). It is sampled by the {@link Simulation} every step (or once per frame, wherever the engine is ticked from) and is slaved to the audio: the playback position is too coarse and jittery to use directly, so the clock runs off the system timer between samples and is nudged towards the audio a little every sample. The nudge is sized for a 60 Hz frame and scaled by how long it has been since the last sample, so the clock settles equally fast however often it is sampled. If it ends up too far off (the player stalled or skipped) it snaps straight to the audio instead. Until the audio reports that it is playing, the clock waits at the start of the song, unless the audio never shows up, in which case it gives up and runs on its own.
+
+    For practice (see {@link Practice}) the clock can run at another rate than real time, as the music does, and can be told to jump. After a jump the audio is ignored until it has caught up, since the player takes a moment to seek and until then reports where it was.
+
+    Times are nanoseconds since the song started. Two offsets are for calibration: the audio offset is how late sound reaches the player (it is subtracted from the audio position), and the visual offset is how far ahead of the song time notes are drawn.
+ */
+public class GameClock implements Engine.Clock {
+    private static long SNAP_THRESHOLD = 100_000_000L; // 100 ms
+    private static double CORRECTION_GAIN = 0.05; // Per CORRECTION_INTERVAL
+    private static long CORRECTION_INTERVAL = 1_000_000_000L / 60;
+    private static long SILENT_START_LIMIT = 3_000_000_000L; // 3 s
+
+    private LongSupplier audio_position;
+    private long audio_offset;
+    private long visual_offset;
+
+    private boolean locked = false;
+    private long first_sample = -1;
+    private long anchor_system;
+    private long anchor_song;
+    private long last_sample;
+    private long song_time;
+    private long drift;
+    private double rate = 1.0;
+    private boolean seeking = false;
+    private long seek_started;
+
+    /** Takes the audio position in nanoseconds (negative while not playing) and the offsets in milliseconds */
+    public GameClock(LongSupplier audio_position, long audio_offset_ms, long visual_offset_ms) {
+        this.audio_position = audio_position;
+        this.audio_offset = audio_offset_ms * 1_000_000L;
+        this.visual_offset = visual_offset_ms * 1_000_000L;
+        this.song_time = -audio_offset;
+    }
+
+    // @formatter:off
+    public long get_song_time() { return song_time; }
+    public long get_visual_time() { return song_time + visual_offset; }
+    public long get_drift() { return drift; }
+    public boolean is_locked() { return locked; }
+    public double get_rate() { return rate; }
+    public long to_audio_position(long song_time) { return song_time + audio_offset; }
+    // @formatter:on
+
+    /** Song time at a System.nanoTime() instant near the last sample, e.g. when a key was pressed */
+    public long to_song_time(long system_time) {
+        if (!locked) {
+            return song_time;
+        }
+        return song_time + elapsed(system_time - last_sample);
+    }
+
+    /** Jumps to a song time at `now` (a System.nanoTime() value); the audio should be told to seek to the same place */
+    public void seek(long song_time, long now) {
+        locked = true;
+        seeking = true;
+        seek_started = now;
+        drift = 0;
+        anchor(now, song_time);
+    }
+
+    /** Runs song time at `rate` times real time from `now` on, to match music played at that rate */
+    public void set_rate(double rate, long now) {
+        if (locked) {
+            anchor(now, anchor_song + elapsed(now - anchor_system));
+        }
+        this.rate = rate;
+    }
+
+    /** Advances the clock to `now` (a System.nanoTime() value); call once per step or frame, always from the same thread */
+    public void sample(long now) {
+        if (first_sample < 0) {
+            first_sample = now;
+            last_sample = now;
+        }
+        long elapsed = now - last_sample;
+        last_sample = now;
+        long audio = audio_position.getAsLong();
+
+        if (!locked) {
+            if (audio >= 0) {
+                locked = true;
+                anchor(now, audio - audio_offset);
+            } else if (now - first_sample >= SILENT_START_LIMIT) {
+                locked = true;
+                anchor(now, song_time);
+            } else {
+                return;
+            }
+        }
+
+        long estimate = anchor_song + elapsed(now - anchor_system);
+        if (seeking && audio >= 0 && Math.abs((audio - audio_offset) - estimate) <= SNAP_THRESHOLD) {
+            seeking = false; // The audio is where it was told to go
+        } else if (seeking && now - seek_started >= SILENT_START_LIMIT) {
+            seeking = false;
+        }
+        if (audio < 0 || seeking) { // Paused, finished, never started or still seeking; keep going on the system timer
+            drift = 0;
+            song_time = Math.max(song_time, estimate);
+            return;
+        }
+
+        drift = (audio - audio_offset) - estimate;
+        if (Math.abs(drift) > SNAP_THRESHOLD) {
+            anchor(now, audio - audio_offset);
+            song_time = anchor_song;
+            return;
+        }
+        long correction = (long) (drift * CORRECTION_GAIN * Math.min(1.0, (double) elapsed / CORRECTION_INTERVAL));
+        anchor_song += correction;
+        // Small corrections never run time backwards, or notes would jitter
+        song_time = Math.max(song_time, estimate + correction);
+    }
+
+    /** Song time that passes in a stretch of system time, at the current rate */
+    private long elapsed(long system_time) {
+        return rate == 1.0 ? system_time : (long) (system_time * rate);
+    }
+
+    private void anchor(long system_time, long song_time) {
+        this.anchor_system = system_time;
+        this.anchor_song = song_time;
+        this.song_time = song_time;
+    }
+}
@@ -1,79 +1,209 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import javafx.geometry.Bounds;
+import javafx.geometry.Point2D;
 import javafx.geometry.Pos;
-import javafx.scene.Group;
+import javafx.geometry.VPos;
+import javafx.scene.Node;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.effect.DropShadow;
+import javafx.scene.image.Image;
+import javafx.scene.input.KeyCode;
 import javafx.scene.layout.HBox;
-import javafx.scene.layout.Pane;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
+import javafx.scene.shape.Circle;
 import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
 
 /**
-    A {@code GameplayManager} contains various {@link NoteManager}s and enables the spawning of {@link Sparkle}s. It listens for keypresses and passes those to the NoteManager.
+    A {@code GameplayManager} contains the {@link Engine} and various {@link NoteManager}s drawing it, and spawns sparkles (through the {@link SparkleManager} it is given) when notes are hit. It listens for keypresses and passes those to the engine.
+
+    In the game, the engine runs on a {@link Simulation} thread (see `simulate`): keypresses go to it instead of `strike_note`, and every frame draws whatever the simulation published last, with sparkles for the hits that a {@link Scoreboard} reader saw go by. Without one, as in replays and benchmarks, the engine is ticked here once a frame.
+
+    There are as many lanes as the chart has (4 to 10, see {@link Mini.Keys}), spaced closer together the more there are. Keypresses find their lane by looking up the key's ordinal in an array, so dispatch costs the same however many lanes there are.
+
+    The lanes can be drawn in one of two ways, picked at startup (see {@link Mini.RendererType}). Either every NoteManager draws its own trace and every note is a node in the scene graph, or the NoteManagers just keep track of their notes and a single {@code LaneCanvas} paints all of them.
+
+    A {@code LaneCanvas} is two canvases: one with the traces and targets, drawn once with real shadows, and one with the notes, redrawn every frame. Notes are stamped from glowing sprites rasterized once per colour, so there are no per-note nodes or effects for JavaFX to lay out and composite. When the quality tier changes, the traces and sprites are simply drawn again.
  */
 
 public class GameplayManager extends StackPane {
     private static Color BACKGROUND_COLOR = Nord.NIGHT_DARK;
-    private static double TRACE_SPACING = 60.0;
+    private static double TRACE_SPACING = 60.0; // At most
+    private static double LANES_WIDTH = 600.0; // Room between the charts and the labels
     private static double BACKDROP_FONT_SIZE = 40.0;
 
-    private Pane sparkle_area;
-    private Group sparkles;
+    private SparkleManager sparkles;
 
+    private Engine engine;
     private ArrayList<NoteManager> note_managers;
+    private Mini.RendererType renderer_type;
+    private LaneCanvas lane_canvas;
+    private int[] lanes_by_key; // Lane of each KeyCode by ordinal, -1 if none
+    private Simulation simulation; // Null while the engine is ticked here
+    private Scoreboard.Reader judgements; // For sparkles, while simulating
+    private EngineState state; // What was drawn last
+    private int seeks = 0; // The state's seek count when the notes were last picked up
+    private DropShadow backdrop_shadow;
+    private Mini.Text[] backdrop_texts;
 
-    public GameplayManager() {
+    public GameplayManager(SparkleManager sparkles, Mini.RendererType renderer_type, Engine.Clock clock) {
+        this(sparkles, renderer_type, clock, ChartLoader.load(Mini.Messenger.SONG_NAME, null));
+    }
+
+    /** Plays a chart that was already loaded (see {@link Library}) instead of loading the messenger's song */
+    public GameplayManager(SparkleManager sparkles, Mini.RendererType renderer_type, Engine.Clock clock,
+            ChartLoader.Sheet sheet) {
+        this.sparkles = sparkles;
+        this.renderer_type = renderer_type;
+        this.engine = new Engine(sheet, clock);
+        this.lanes_by_key = map_keys(engine.get_letters());
+        this.state = engine;
+        Mini.Messenger.set_scoreboard(engine.get_scoreboard());
         setAlignment(Pos.CENTER);
-        sparkles = new Group();
-        sparkle_area = new Pane(sparkles);
-        sparkle_area.setPrefSize(800, 800);
 
         getChildren()
                 .addAll(
                         create_backdrop(),
-                        create_note_managers_and_spacing(),
-                        sparkle_area);
+                        create_note_managers_and_spacing());
+    }
+
+    // @formatter:off
+    public Engine get_engine() { return engine; }
+    public int get_lane(KeyCode code) { return code == null ? -1 : lanes_by_key[code.ordinal()]; }
+    public Simulation get_simulation() { return simulation; }
+    public EngineState get_state() { return state; }
+    // @formatter:on
+
+    /** Hands the engine over to a new {@link Simulation} thread, sampling the clock, and starts it; from then on only draw it */
+    public Simulation simulate(GameClock clock, Simulation.Listener listener) {
+        judgements = engine.get_scoreboard().reader();
+        simulation = new Simulation(engine, clock, listener);
+        simulation.start();
+        return simulation;
     }
 
-    /** Pass a timestep down the chain of command */
-    public void distribute_timestep(long start, long now) {
+    /** Notes on screen in every lane, however they are drawn */
+    public int get_live_note_count() {
+        int count = 0;
         for (NoteManager note_manager : note_managers) {
-            note_manager.distribute_timestep();
-            note_manager.consult_chart(start, now);
-            note_manager.oversight();
+            count += note_manager.get_live_count();
         }
+        return count;
     }
 
-    /** Pass a KeyEvent down the chain of command */
-    public void strike_note(String letter) {
-        for (NoteManager note_manager : note_managers) {
-            if (note_manager.strike_note(letter)) {
-                add_sparkle(
-                        note_manager.getLayoutX() + 30,
-                        note_manager.getLayoutY() + 700);
+    /** Advance the engine (which reads the clock), or pick up the simulation's latest frame, and pass the timestep down the chain of command */
+    public void distribute_timestep() {
+        if (simulation == null) {
+            engine.tick();
+        } else {
+            state = simulation.get_frame();
+            while (judgements.advance()) {
+                int outcome = judgements.get_outcome();
+                if (outcome >= 0 && outcome != Engine.Judgement.MISS.ordinal()) {
+                    add_sparkle(judgements.get_lane());
+                }
+            }
+        }
+        if (state.get_seeks() != seeks) {
+            seeks = state.get_seeks(); // The engine jumped, so the notes on screen are the wrong ones
+            for (NoteManager note_manager : note_managers) {
+                note_manager.rewind(state);
             }
         }
+        for (NoteManager note_manager : note_managers) {
+            note_manager.distribute_timestep(state);
+        }
+        if (lane_canvas != null) {
+            lane_canvas.draw(state.get_visual_time());
+        }
+    }
+
+    /** Pass a keypress on a lane (see `get_lane`), stamped with the song time it arrived at, to the engine; not while simulating */
+    public void strike_note(int lane, long time) {
+        Engine.Judgement judgement = engine.strike(lane, time);
+        note_managers.get(lane).oversight(engine);
+        if (judgement != null && judgement != Engine.Judgement.MISS) {
+            add_sparkle(lane);
+        }
+    }
+
+    /** Sizes or drops every shadow and turns note fading on or off, for a quality tier from the {@link QualityGovernor} */
+    public void set_quality(QualityGovernor.Tier tier) {
+        Note.set_quality(tier);
+        for (NoteManager note_manager : note_managers) {
+            note_manager.set_quality(tier);
+        }
+        if (lane_canvas != null) {
+            lane_canvas.set_quality(tier);
+        }
+        if (tier.has_shadows()) {
+            backdrop_shadow.setRadius(tier.get_shadow_radius());
+        }
+        for (Mini.Text text : backdrop_texts) {
+            text.setEffect(tier.has_shadows() ? backdrop_shadow : null);
+        }
+    }
+
+    /** Adds a sparkle on a lane's target */
+    private void add_sparkle(int lane) {
+        add_sparkle(lane_canvas == null
+                ? note_managers.get(lane).get_target_center()
+                : lane_canvas.get_target_center(lane));
+    }
+
+    /** Adds a sparkle at the specific location (in scene coordinates) */
+    public void add_sparkle(Point2D scene_point) {
+        Point2D point = sparkles.sceneToLocal(scene_point);
+        sparkles.add_sparkle(point.getX(), point.getY(), Nord.ALL_AURORA);
     }
 
-    /** Adds a sparkle at the specific location */
-    public void add_sparkle(double x, double y) {
-        sparkles.getChildren().add(new Sparkle(x, y, Nord.ALL_AURORA));
+    /** Stops the simulation, if any, and gives every note on screen back to the pool; call when leaving a song */
+    public void dispose() {
+        if (simulation != null) {
+            simulation.stop();
+        }
+        for (NoteManager note_manager : note_managers) {
+            note_manager.clear();
+        }
+    }
+
+    /** The lane of every key, by ordinal; a chart with a lane count or a letter the game can't play is refused here */
+    private static int[] map_keys(String[] letters) {
+        Mini.Keys.check(letters); // The library already turned away charts that fail this
+        int[] lanes = new int[KeyCode.values().length];
+        Arrays.fill(lanes, -1);
+        for (int lane = 0; lane < letters.length; lane++) {
+            lanes[Mini.Keys.key_of(letters[lane]).ordinal()] = lane;
+        }
+        return lanes;
     }
 
     /** Why do I even write docstrings when the function... whatever. */
-    private HBox create_note_managers_and_spacing() {
+    private Node create_note_managers_and_spacing() {
         note_managers = new ArrayList<>();
         HBox gameplay_region = new HBox();
-        for (Mini.LetterType letter : Mini.LetterType.values()) {
-            note_managers.add(new NoteManager(letter));
+        boolean draws_notes = renderer_type == Mini.RendererType.NODES;
+        String[] letters = engine.get_letters();
+        double spacing = Math.clamp(
+                (LANES_WIDTH - letters.length * NoteManager.get_width()) / (letters.length - 1), 0.0, TRACE_SPACING);
+        for (int lane = 0; lane < letters.length; lane++) {
+            note_managers.add(new NoteManager(letters[lane], engine, lane, draws_notes));
             gameplay_region.getChildren().add(note_managers.getLast());
             gameplay_region
                     .getChildren()
-                    .add(new Mini.Spacer(TRACE_SPACING, 0.0));
+                    .add(new Mini.Spacer(spacing, 0.0));
         }
         gameplay_region.getChildren().removeLast();
         gameplay_region.setAlignment(Pos.CENTER);
-        return gameplay_region;
+        if (draws_notes) {
+            return gameplay_region;
+        }
+        lane_canvas = new LaneCanvas(note_managers, spacing);
+        return lane_canvas;
     }
 
     /** Creates the backdrop (artist and song) */
@@ -81,13 +211,15 @@ public class GameplayManager extends StackPane {
         // Extra newline is for spacing without worrying about absolute position
         Mini.Text song = new Mini.Text("\n" + Mini.Messenger.SONG_NAME, BACKDROP_FONT_SIZE);
         Mini.Text artist = new Mini.Text(Mini.Messenger.ARTIST_NAME + "\n", BACKDROP_FONT_SIZE);
-        song.setFont(new Font("Apple Chancery", BACKDROP_FONT_SIZE));
-        artist.setFont(new Font("Apple Chancery", BACKDROP_FONT_SIZE));
+        song.setFont(new Font(Mini.DISPLAY_FONT, BACKDROP_FONT_SIZE));
+        artist.setFont(new Font(Mini.DISPLAY_FONT, BACKDROP_FONT_SIZE));
 
+        backdrop_shadow = new DropShadow(10.0, Nord.SNOW_DARK);
+        backdrop_texts = new Mini.Text[] { song, artist };
         song.setFill(BACKGROUND_COLOR);
-        song.setEffect(new DropShadow(10.0, Nord.SNOW_DARK));
+        song.setEffect(backdrop_shadow);
         artist.setFill(BACKGROUND_COLOR);
-        artist.setEffect(new DropShadow(10.0, Nord.SNOW_DARK));
+        artist.setEffect(backdrop_shadow);
 
         StackPane backdrop = new StackPane(song, artist);
         StackPane.setAlignment(song, Pos.TOP_CENTER);
@@ -95,3 +227,116 @@ public class GameplayManager extends StackPane {
         return backdrop;
     }
 }
+
+class LaneCanvas extends StackPane {
+    private static double TRACE_SHADOW_RADIUS = 10.0;
+    private static double LABEL_SIZE = 18.0;
+
+    private ArrayList<NoteManager> lanes;
+    private double spacing;
+    private double trace_shadow_radius = TRACE_SHADOW_RADIUS;
+    private Canvas trace_layer;
+    private Canvas note_layer;
+    private Image[] sprites;
+    private double sprite_offset_x;
+    private double sprite_offset_y;
+
+    public LaneCanvas(ArrayList<NoteManager> lanes, double spacing) {
+        this.lanes = lanes;
+        this.spacing = spacing;
+
+        double width = lanes.size() * NoteManager.get_width() + (lanes.size() - 1) * spacing;
+        trace_layer = new Canvas(width, NoteManager.get_height());
+        note_layer = new Canvas(width, NoteManager.get_height());
+        draw_traces(trace_layer.getGraphicsContext2D());
+        sprites = create_sprites();
+
+        setMaxSize(width, NoteManager.get_height());
+        getChildren().addAll(trace_layer, note_layer);
+    }
+
+    /** Draws the traces and note sprites again with a quality tier's shadows (fading is up to the notes) */
+    public void set_quality(QualityGovernor.Tier tier) {
+        trace_shadow_radius = tier.get_shadow_radius();
+        GraphicsContext context = trace_layer.getGraphicsContext2D();
+        context.clearRect(0, 0, trace_layer.getWidth(), trace_layer.getHeight());
+        draw_traces(context);
+        sprites = create_sprites();
+    }
+
+    /** Horizontal centre of a lane */
+    private double lane_x(int lane) {
+        return lane * (NoteManager.get_width() + spacing) + NoteManager.get_width() / 2.0;
+    }
+
+    /** Where the centre of a lane's target circle is, in scene coordinates */
+    public Point2D get_target_center(int lane) {
+        return note_layer.localToScene(lane_x(lane), NoteManager.get_height() - NoteManager.get_width() / 2.0);
+    }
+
+    /** Repaints every note of every lane where it is at a visual time */
+    public void draw(long visual_time) {
+        GraphicsContext context = note_layer.getGraphicsContext2D();
+        context.clearRect(0, 0, note_layer.getWidth(), note_layer.getHeight());
+        for (int lane = 0; lane < lanes.size(); lane++) {
+            NoteManager notes = lanes.get(lane);
+            double x = lane_x(lane) - sprite_offset_x;
+            for (int i = 0; i < notes.get_live_count(); i++) {
+                double y_displacement = Note.y_displacement_at(notes.get_spawn_time(i), visual_time);
+                context.setGlobalAlpha(Note.fade_at(y_displacement));
+                context.drawImage(
+                        sprites[notes.get_color_index(i)],
+                        x,
+                        y_displacement + Note.get_note_radius() - sprite_offset_y);
+            }
+        }
+        context.setGlobalAlpha(1.0);
+    }
+
+    /** Rasterizes a glowing note of each colour once, as the node renderer would draw it */
+    private Image[] create_sprites() {
+        Color[] colors = Note.get_line_colors();
+        Image[] images = new Image[colors.length];
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        for (int i = 0; i < colors.length; i++) {
+            Circle circle = new Circle(Note.get_note_radius());
+            circle.setFill(Note.get_fill_color());
+            circle.setStroke(colors[i]);
+            if (Note.get_shadow_radius() > 0) {
+                circle.setEffect(new DropShadow(Note.get_shadow_radius(), colors[i]));
+            }
+            Bounds bounds = circle.getBoundsInParent();
+            sprite_offset_x = -bounds.getMinX();
+            sprite_offset_y = -bounds.getMinY();
+            images[i] = circle.snapshot(parameters, null);
+        }
+        return images;
+    }
+
+    /** Draws the lines, target circles and letters, which never change */
+    private void draw_traces(GraphicsContext context) {
+        double radius = NoteManager.get_width() / 2.0;
+        double target_y = NoteManager.get_height() - radius;
+        Color trace_color = NoteManager.get_trace_color();
+
+        context.setEffect(trace_shadow_radius > 0 ? new DropShadow(trace_shadow_radius, trace_color) : null);
+        context.setStroke(trace_color);
+        context.setFill(Nord.NIGHT_DARK);
+        for (int lane = 0; lane < lanes.size(); lane++) {
+            double x = lane_x(lane);
+            context.strokeLine(x, 0.0, x, target_y - radius);
+            context.fillOval(x - radius, target_y - radius, 2 * radius, 2 * radius);
+            context.strokeOval(x - radius, target_y - radius, 2 * radius, 2 * radius);
+        }
+        context.setEffect(null);
+
+        context.setFont(new Mini.Text("", LABEL_SIZE).getFont());
+        context.setFill(Nord.SNOW_LIGHT);
+        context.setTextAlign(TextAlignment.CENTER);
+        context.setTextBaseline(VPos.CENTER);
+        for (int lane = 0; lane < lanes.size(); lane++) {
+            context.fillText(lanes.get(lane).get_letter(), lane_x(lane), target_y);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+    {@code Headless} plays a chart through the {@link Engine} without a display. Time comes from a simulated clock that jumps a frame at a time, so a song plays out in however long the engine takes to chew through it, which is thousands of times faster than real time. Keypresses are either scripted or generated by autoplay.
+
+    Usage: `java Headless <chart.yrct|chart.yrcb> [--script=<file>] [--jitter=<ms>] [--seed=<n>] [--fps=<n>] [--windows=<ms>,<ms>,<ms>,<ms>]`
+
+    A script has one keypress per line, `<time in ms> <letter>`, e.g. `1875.5 D`; lines starting with `#` are comments. Without a script, autoplay presses every note at its exact time plus Gaussian noise with a standard deviation of `--jitter` milliseconds.
+
+    A {@code Presses} is a list of timestamped keypresses, sorted by time. A {@code SimulatedClock} is a clock that is wherever it was last told to be.
+ */
+public class Headless {
+    private static double DEFAULT_FPS = 240.0;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java Headless <chart.yrct|chart.yrcb> [--script=<file>] [--jitter=<ms>] [--seed=<n>] [--fps=<n>] [--windows=<ms>,...]");
+            System.exit(1);
+        }
+        Path chart = Path.of(args[0]);
+        String script = option(args, "script", null);
+        double jitter_ms = Double.parseDouble(option(args, "jitter", "0"));
+        long seed = Long.parseLong(option(args, "seed", "0"));
+        double fps = Double.parseDouble(option(args, "fps", Double.toString(DEFAULT_FPS)));
+        Engine.Judgement.configure(option(args, "windows", null));
+
+        ChartLoader.Sheet sheet = chart.toString().endsWith(".yrcb")
+                ? ChartLoader.load_binary(chart, null)
+                : ChartLoader.load(chart, null); // With its own lanes
+        Presses presses = script == null
+                ? Presses.autoplay(sheet, jitter_ms, seed)
+                : Presses.from_script(Path.of(script), sheet.get_letters());
+
+        long begin = System.nanoTime();
+        SimulatedClock clock = new SimulatedClock();
+        Engine engine = new Engine(sheet, clock);
+        play(engine, clock, presses, fps);
+        long wall_time = System.nanoTime() - begin;
+
+        report(engine, clock.get_song_time(), wall_time, sheet.get_note_count(), presses.size());
+    }
+
+    /** Looks for `--name=value` among the arguments */
+    private static String option(String[] args, String name, String fallback) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return fallback;
+    }
+
+    /** Steps the clock a frame at a time, feeding each frame the presses that came before it, until nothing is left */
+    public static void play(Engine engine, SimulatedClock clock, Presses presses, double fps) {
+        long frame = (long) (1e9 / fps);
+        long time = 0;
+        int next = 0;
+        while (!engine.is_finished() || next < presses.size()) {
+            time += frame;
+            clock.set(time);
+            while (next < presses.size() && presses.get_time(next) <= time) {
+                engine.strike(presses.get_lane(next), presses.get_time(next));
+                next++;
+            }
+            engine.tick();
+        }
+    }
+
+    private static void report(Engine engine, long song_time, long wall_time, int notes, int presses) {
+        Engine.Score score = engine.get_score();
+        System.out.printf("Notes %d, presses %d%n", notes, presses);
+        System.out.printf("Hits %d, misses %d, losses %d, combo %d%n",
+                score.get_hits(), score.get_misses(), score.get_losses(), score.get_combo());
+        for (Engine.Judgement judgement : Engine.Judgement.values()) {
+            System.out.printf("  %-8s %d%n", judgement, score.get_judgement_count(judgement));
+        }
+
+        if (score.get_error_count() > 0) {
+            System.out.printf("Timing error %.2f ms mean, %.2f ms standard deviation, p99 %.1f ms early and %.1f ms late%n",
+                    score.get_mean_error() / 1e6, score.get_error_deviation() / 1e6,
+                    score.get_early_errors().get_percentile(0.99) / 1e6, score.get_late_errors().get_percentile(0.99) / 1e6);
+        }
+        System.out.printf("Simulated %.1f s in %.1f ms (%.0fx real time)%n",
+                song_time / 1e9, wall_time / 1e6, (double) song_time / Math.max(1, wall_time));
+    }
+
+    /** A {@code SimulatedClock} is wherever it was last set to; song and visual time are the same. */
+    public static class SimulatedClock implements Engine.Clock {
+        private long time;
+
+        // @formatter:off
+        public void set(long time) { this.time = time; }
+        public long get_song_time() { return time; }
+        public long get_visual_time() { return time; }
+        // @formatter:on
+    }
+
+    /** A {@code Presses} is a time-sorted list of keypresses: song time in nanoseconds and lane. */
+    public static class Presses {
+        private long[] times;
+        private int[] lanes;
+        private int size;
+
+        public Presses(int capacity) {
+            times = new long[Math.max(1, capacity)];
+            lanes = new int[Math.max(1, capacity)];
+            size = 0;
+        }
+
+        // @formatter:off
+        public int size() { return size; }
+        public long get_time(int index) { return times[index]; }
+        public int get_lane(int index) { return lanes[index]; }
+        // @formatter:on
+
+        /** Appends a press; callers keep them in time order */
+        public void add(long time, int lane) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                lanes = Arrays.copyOf(lanes, size * 2);
+            }
+            times[size] = time;
+            lanes[size] = lane;
+            size++;
+        }
+
+        /** One press per note at its exact time, give or take Gaussian noise, merged across lanes */
+        public static Presses autoplay(ChartLoader.Sheet sheet, double jitter_ms, long seed) {
+            Random random = new Random(seed);
+            int lane_count = sheet.get_lane_count();
+            long[][] hits = new long[lane_count][];
+            for (int lane = 0; lane < lane_count; lane++) {
+                ChartLoader.Lane spawns = sheet.get_lane(sheet.get_letters()[lane]);
+                long[] lane_hits = new long[spawns.size()];
+                int[] next = { 0 };
+                spawns.each_time(spawn -> {
+                    long noise = (long) (random.nextGaussian() * jitter_ms * 1e6);
+                    lane_hits[next[0]++] = spawn + Engine.get_travel_time() + noise;
+                });
+                hits[lane] = lane_hits;
+                Arrays.sort(hits[lane]); // Noise may reorder close notes
+            }
+
+            Presses presses = new Presses(sheet.get_note_count());
+            int[] cursors = new int[lane_count];
+            while (true) {
+                int earliest = -1;
+                for (int lane = 0; lane < lane_count; lane++) {
+                    if (cursors[lane] < hits[lane].length
+                            && (earliest < 0 || hits[lane][cursors[lane]] < hits[earliest][cursors[earliest]])) {
+                        earliest = lane;
+                    }
+                }
+                if (earliest < 0) {
+                    return presses;
+                }
+                presses.add(hits[earliest][cursors[earliest]++], earliest);
+            }
+        }
+
+        /** Reads `<time in ms> <letter>` lines; presses of letters that aren't lanes are dropped */
+        public static Presses from_script(Path script, String[] letters) throws IOException {
+            ArrayList<long[]> entries = new ArrayList<>();
+            for (String line : Files.readAllLines(script)) {
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                for (int lane = 0; lane < letters.length; lane++) {
+                    if (letters[lane].equalsIgnoreCase(parts[1])) {
+                        entries.add(new long[] { (long) (Double.parseDouble(parts[0]) * 1e6), lane });
+                    }
+                }
+            }
+            entries.sort((a, b) -> Long.compare(a[0], b[0]));
+
+            Presses presses = new Presses(entries.size());
+            for (long[] entry : entries) {
+                presses.add(entry[0], (int) entry[1]);
+            }
+            return presses;
+        }
+    }
+}
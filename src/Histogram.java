@@ -0,0 +1,63 @@
+/**
+    A {@code Histogram} counts durations in a fixed number of buckets, so it costs the same memory however long the song is. Small values are counted exactly and larger ones in 32 buckets per power of two, so a percentile read back is within about 3% of the real one. It was written for the {@link ProfilerManager}'s stages and is used wherever else durations pile up: {@link Flight}'s summaries, the {@link StressTest}, {@link Hitsounds}' latency and how early and late presses were in an {@link Engine.Score}.
+
+    It isn't thread safe; whoever records into one should be the only one reading it until they are done.
+ */
+public class Histogram {
+    private static int SUB_BUCKET_BITS = 5; // 32 buckets per power of two, so within about 3%
+    private static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    public static int BUCKETS = 40 * SUB_BUCKETS; // The last bucket ends at 2^44 ns, about 4.9 hours; anything longer is counted in it
+
+    private long[] counts = new long[BUCKETS];
+    private long count = 0;
+    private long max = 0;
+
+    // @formatter:off
+    public long get_count() { return count; }
+    public long get_max() { return max; }
+    public long get_bucket_count(int bucket) { return counts[bucket]; }
+    // @formatter:on
+
+    /** Counts a duration in nanoseconds */
+    public void record(long value) {
+        value = Math.max(0, value);
+        counts[Math.min(BUCKETS - 1, bucket_of(value))]++;
+        count++;
+        max = Math.max(max, value);
+    }
+
+    /** The smallest bucket bound at or above the given fraction of recorded values, capped at the max */
+    public long get_percentile(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min(max, upper_bound(bucket));
+            }
+        }
+        return max;
+    }
+
+    /** Exact below 2 * SUB_BUCKETS, then SUB_BUCKETS buckets per power of two */
+    private static int bucket_of(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /** Largest value that falls in a bucket */
+    public static long upper_bound(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub_bucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub_bucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,331 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+    {@code Hitsounds} plays a short sound on every keypress. The music goes through a MediaPlayer (see {@link Mini.Music}), which takes tens of milliseconds to start a sound and never the same tens twice, so hitsounds get a mixer of their own on javax.sound.sampled instead: one line with a small buffer of a known size, fed by a thread that mixes every voice into it a few milliseconds at a time.
+
+    Samples are WAV files, decoded once when they're loaded into 16 bit stereo PCM at the mixer's rate, so starting one is just pointing a voice at an array. If there's no "hit.wav" in the assets, the game uses a click made up on the spot. Load samples before `start`; after that they belong to the mixer thread.
+
+    `trigger` can be called from any thread and never waits: it claims a slot in a ring of commands and writes into it, much like {@link Scoreboard} publishes events (but a full ring drops the new sound rather than overwriting an old one), and the mixer picks up whatever has been published before it mixes the next period. Up to 32 voices play at once; beyond that the oldest one is cut off.
+
+    Latency is measured from the System.nanoTime() given to `trigger` (the keypress, in the game) to the moment the line reports having played the voice's first frame (checked once a period, so to within about 3 ms), and is printed along with how many sounds were played when the mixer is closed. With the default buffer of 512 frames it should come to around 10 to 15 ms on a machine with a sound card; `--audio-buffer=<frames>` trades dropouts for latency. `java Hitsounds [<sample.wav>] [--audio-buffer=<frames>]` clicks ten times a second for five seconds and prints the latency.
+
+    If there is no audio output at all, starting fails with a message and triggering does nothing.
+ */
+public class Hitsounds {
+    private static float SAMPLE_RATE = 44100;
+    private static int CHANNELS = 2;
+    private static int FRAME_SIZE = 4; // Bytes: 16 bit stereo
+    private static int PERIOD = 128; // Frames mixed at a time, about 3 ms
+    private static int DEFAULT_BUFFER = 512; // Frames the line holds, about 12 ms
+    private static int MAX_VOICES = 32;
+    private static int QUEUE_SIZE = 256; // Power of two
+    private static int MAX_PENDING = 64; // Voices waiting for their latency to be measured
+    private static double GAIN = 0.6;
+    public static AudioFormat FORMAT = new AudioFormat(SAMPLE_RATE, 16, CHANNELS, true, false);
+
+    private int buffer_frames;
+    private short[][] samples = new short[0][];
+    private SourceDataLine line;
+    private Thread mixer;
+    private volatile boolean running = false;
+
+    // Commands; a slot's sequence is 2 * command + 2 once the command is written
+    private AtomicLong claimed = new AtomicLong(0);
+    private AtomicLong consumed = new AtomicLong(0);
+    private AtomicLongArray sequences = new AtomicLongArray(QUEUE_SIZE);
+    private int[] command_samples = new int[QUEUE_SIZE];
+    private long[] command_times = new long[QUEUE_SIZE];
+
+    // Voices, owned by the mixer thread; a voice is idle when its sample is -1
+    private int[] voice_samples = new int[MAX_VOICES];
+    private int[] voice_positions = new int[MAX_VOICES];
+    private long[] voice_started = new long[MAX_VOICES];
+    private int[] mix = new int[PERIOD * CHANNELS];
+    private byte[] output = new byte[PERIOD * FRAME_SIZE];
+    private long frames_written = 0;
+
+    // Latency, measured on the mixer thread: the first frame of each new voice and when it was triggered
+    private long[] pending_frames = new long[MAX_PENDING];
+    private long[] pending_times = new long[MAX_PENDING];
+    private int pending_first = 0;
+    private int pending_count = 0;
+    private Histogram latency = new Histogram();
+
+    private volatile long played = 0;
+    private volatile long stolen = 0;
+    private AtomicLong dropped = new AtomicLong(0);
+
+    /** A mixer whose line holds `buffer_frames` frames (at least two periods); nothing plays until `start` */
+    public Hitsounds(int buffer_frames) {
+        this.buffer_frames = Math.max(buffer_frames, 2 * PERIOD);
+        Arrays.fill(voice_samples, -1);
+    }
+
+    // @formatter:off
+    public boolean is_running() { return running; }
+    public int get_buffer_frames() { return buffer_frames; }
+    public long get_played() { return played; }
+    public long get_stolen() { return stolen; }
+    public long get_dropped() { return dropped.get(); }
+    // @formatter:on
+
+    public static void main(String[] args) throws Exception {
+        Hitsounds hitsounds = new Hitsounds(buffer_option(args));
+        int sample = args.length > 0 && !args[0].startsWith("--")
+                ? hitsounds.load(Path.of(args[0]))
+                : hitsounds.add(click());
+        if (!hitsounds.start()) {
+            System.exit(1);
+        }
+        for (int i = 0; i < 50; i++) {
+            hitsounds.trigger(sample, System.nanoTime());
+            Thread.sleep(100);
+        }
+        hitsounds.close();
+    }
+
+    /** The `--audio-buffer` option among the arguments, or the default */
+    public static int buffer_option(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith("--audio-buffer=")) {
+                return Integer.parseInt(arg.substring("--audio-buffer=".length()));
+            }
+        }
+        return DEFAULT_BUFFER;
+    }
+
+    /** Decodes a sound file into a new sample and returns its number */
+    public int load(Path path) throws IOException {
+        try (AudioInputStream source = AudioSystem.getAudioInputStream(path.toFile())) {
+            AudioFormat format = source.getFormat();
+            AudioFormat pcm = new AudioFormat(format.getSampleRate(), 16, format.getChannels(), true, false);
+            try (AudioInputStream decoded = AudioSystem.getAudioInputStream(pcm, source)) {
+                byte[] bytes = decoded.readAllBytes();
+                short[] pcm_samples = new short[bytes.length / 2];
+                for (int i = 0; i < pcm_samples.length; i++) {
+                    pcm_samples[i] = (short) ((bytes[2 * i] & 0xff) | (bytes[2 * i + 1] << 8));
+                }
+                return add(to_mixer_format(pcm_samples, format.getChannels(), format.getSampleRate()));
+            }
+        } catch (UnsupportedAudioFileException e) {
+            throw new IOException("Not a sound file the JDK can read: " + path, e);
+        }
+    }
+
+    /** Loads "hit.wav" from a directory if it's there, or else adds the made-up click; returns its number */
+    public int load_hit(Path directory) {
+        Path path = directory.resolve("hit.wav");
+        if (Files.exists(path)) {
+            try {
+                return load(path);
+            } catch (IOException e) {
+                System.err.println("Couldn't load " + path + ", clicking instead: " + e.getMessage());
+            }
+        }
+        return add(click());
+    }
+
+    /** Adds a sample already in the mixer's format (interleaved 16 bit stereo at 44.1 kHz) and returns its number */
+    public int add(short[] sample) {
+        if (running) {
+            throw new IllegalStateException("Samples have to be added before the mixer starts");
+        }
+        samples = Arrays.copyOf(samples, samples.length + 1);
+        samples[samples.length - 1] = sample;
+        return samples.length - 1;
+    }
+
+    /** Opens the line and starts mixing; returns false (and says why) if there's no audio output to open */
+    public boolean start() {
+        try {
+            line = AudioSystem.getSourceDataLine(FORMAT);
+            line.open(FORMAT, buffer_frames * FRAME_SIZE);
+        } catch (LineUnavailableException | IllegalArgumentException | SecurityException e) {
+            System.err.println("No hitsounds, couldn't open audio output: " + e.getMessage());
+            line = null;
+            return false;
+        }
+        buffer_frames = line.getBufferSize() / FRAME_SIZE; // The line may not give exactly what was asked for
+        line.start();
+        running = true;
+        mixer = Thread.ofPlatform()
+                .name("Hitsound mixer")
+                .priority(Thread.MAX_PRIORITY)
+                .daemon(true)
+                .start(this::run);
+        return true;
+    }
+
+    /** Plays a sample, as soon as possible after `system_time` (a System.nanoTime() value); never blocks, from any thread */
+    public void trigger(int sample, long system_time) {
+        if (!running) {
+            return;
+        }
+        long command;
+        do {
+            command = claimed.get();
+            if (command - consumed.get() >= QUEUE_SIZE) {
+                dropped.incrementAndGet(); // The mixer is stuck
+                return;
+            }
+        } while (!claimed.compareAndSet(command, command + 1));
+        int slot = (int) (command & (QUEUE_SIZE - 1));
+        command_samples[slot] = sample;
+        command_times[slot] = system_time;
+        sequences.setRelease(slot, 2 * command + 2);
+    }
+
+    /** Stops the mixer, lets the line play out, and prints how many sounds played and how late they were */
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            mixer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        line.drain();
+        line.close();
+        System.out.printf("Hitsounds: %d played (%d cut off, %d dropped), %d frame buffer;"
+                + " latency p50 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                played, stolen, dropped.get(), buffer_frames,
+                latency.get_percentile(0.50) / 1e6, latency.get_percentile(0.99) / 1e6, latency.get_max() / 1e6);
+    }
+
+    /** A short bright click, so there's always something to play */
+    public static short[] click() {
+        int frames = (int) (SAMPLE_RATE * 0.04);
+        short[] sample = new short[frames * CHANNELS];
+        for (int frame = 0; frame < frames; frame++) {
+            double time = frame / SAMPLE_RATE;
+            double envelope = Math.exp(-time * 120);
+            double value = envelope * (0.7 * Math.sin(2 * Math.PI * 1800 * time) + 0.3 * Math.sin(2 * Math.PI * 3100 * time));
+            short level = (short) (value * Short.MAX_VALUE);
+            sample[frame * CHANNELS] = level;
+            sample[frame * CHANNELS + 1] = level;
+        }
+        return sample;
+    }
+
+    /** Makes interleaved 16 bit PCM of any rate and channel count into the mixer's stereo at 44.1 kHz */
+    private static short[] to_mixer_format(short[] pcm, int channels, float rate) {
+        int source_frames = pcm.length / channels;
+        int frames = (int) ((long) source_frames * SAMPLE_RATE / rate);
+        short[] sample = new short[frames * CHANNELS];
+        for (int frame = 0; frame < frames; frame++) {
+            double position = frame * (double) rate / SAMPLE_RATE;
+            int before = Math.min((int) position, source_frames - 1);
+            int after = Math.min(before + 1, source_frames - 1);
+            double fraction = position - before;
+            for (int channel = 0; channel < CHANNELS; channel++) {
+                int source_channel = Math.min(channel, channels - 1); // Mono goes to both sides
+                double value = pcm[before * channels + source_channel] * (1 - fraction)
+                        + pcm[after * channels + source_channel] * fraction;
+                sample[frame * CHANNELS + channel] = (short) Math.round(value);
+            }
+        }
+        return sample;
+    }
+
+    private void run() {
+        while (running) {
+            take_commands();
+            mix_period();
+            line.write(output, 0, output.length); // Blocks while the line is full, which paces the loop
+            frames_written += PERIOD;
+            measure();
+        }
+    }
+
+    /** Starts a voice for every command published so far, in order */
+    private void take_commands() {
+        long next = consumed.get();
+        while (true) {
+            int slot = (int) (next & (QUEUE_SIZE - 1));
+            if (sequences.getAcquire(slot) != 2 * next + 2) {
+                break;
+            }
+            int sample = command_samples[slot];
+            long time = command_times[slot];
+            next++;
+            consumed.set(next);
+            if (sample >= 0 && sample < samples.length) {
+                start_voice(sample, time);
+            }
+        }
+    }
+
+    private void start_voice(int sample, long time) {
+        int voice = 0;
+        for (int i = 0; i < MAX_VOICES; i++) {
+            if (voice_samples[i] < 0) {
+                voice = i;
+                break;
+            }
+            if (voice_started[i] < voice_started[voice]) {
+                voice = i;
+            }
+        }
+        if (voice_samples[voice] >= 0) {
+            stolen++;
+        }
+        voice_samples[voice] = sample;
+        voice_positions[voice] = 0;
+        voice_started[voice] = frames_written;
+        played++;
+        if (pending_count < MAX_PENDING) {
+            int index = (pending_first + pending_count++) % MAX_PENDING;
+            pending_frames[index] = frames_written;
+            pending_times[index] = time;
+        }
+    }
+
+    /** Adds every voice into the next period and converts it to bytes for the line */
+    private void mix_period() {
+        Arrays.fill(mix, 0);
+        for (int voice = 0; voice < MAX_VOICES; voice++) {
+            if (voice_samples[voice] < 0) {
+                continue;
+            }
+            short[] sample = samples[voice_samples[voice]];
+            int position = voice_positions[voice];
+            int count = Math.min(mix.length, sample.length - position);
+            for (int i = 0; i < count; i++) {
+                mix[i] += sample[position + i];
+            }
+            voice_positions[voice] = position + count;
+            if (voice_positions[voice] >= sample.length) {
+                voice_samples[voice] = -1;
+            }
+        }
+        for (int i = 0; i < mix.length; i++) {
+            int value = (int) Math.clamp(mix[i] * GAIN, Short.MIN_VALUE, Short.MAX_VALUE);
+            output[2 * i] = (byte) value;
+            output[2 * i + 1] = (byte) (value >> 8);
+        }
+    }
+
+    /** Records the latency of every voice whose first frame the line has played by now */
+    private void measure() {
+        long position = line.getLongFramePosition();
+        long now = System.nanoTime();
+        while (pending_count > 0 && pending_frames[pending_first] <= position) {
+            latency.record(now - pending_times[pending_first]);
+            pending_first = (pending_first + 1) % MAX_PENDING;
+            pending_count--;
+        }
+    }
+}
@@ -5,7 +5,7 @@ import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 
 /**
-    A {@code} LabelManager} is the high-level interface for managing Labels. Calling `distribute_timestep` will have it tell its children to poll Messenger and figure out what they're supposed to look like.
+    A {@code} LabelManager} is the high-level interface for managing Labels. Calling `distribute_timestep` will have it tell its children to poll Messenger and figure out what they're supposed to look like. They only touch their text when the number in it changes, and reuse the strings of numbers they've shown before, so a frame where nothing was judged allocates nothing.
 
     A {@code Label} is a box with two pieces of stylized text in it. These are a description (e.g., "Score") and a value (e.g., "123").
  */
@@ -42,9 +42,13 @@ class Label extends VBox {
     private double LABEL_SIZE = 20.0;
     private double CONTENT_SIZE = 40.0;
 
+    private static String[] DIGITS = new String[10_000];
+
     private Mini.LabelType label_type;
     private Mini.Text description;
     private Mini.Text value;
+    private Scoreboard.Snapshot shown; // Snapshots are immutable, so a new one is the only sign the score changed
+    private int shown_number = -1;
 
     public Label(Mini.LabelType label_type) {
         this.label_type = label_type;
@@ -56,19 +60,39 @@ class Label extends VBox {
         getChildren().addAll(description, value);
     }
 
-    /** Updates content of value */
+    /** Updates content of value, if it changed */
     public void handle_timestep() {
-        String text;
+        Scoreboard.Snapshot snapshot = Mini.Messenger.get_snapshot();
+        if (snapshot == shown) {
+            return;
+        }
+        shown = snapshot;
+
+        int number;
         switch (label_type) {
             case Mini.LabelType.PLAY_COMBO:
-                text = Integer.toString(Mini.Messenger.get_combo());
+                number = snapshot.get_combo();
                 break;
             case Mini.LabelType.PLAY_SCORE:
-                text = Integer.toString(Mini.Messenger.get_hits());
+                number = snapshot.get_hits();
                 break;
             default:
                 return;
         }
-        value.setText(text);
+        if (number != shown_number) {
+            shown_number = number;
+            value.setText(digits(number));
+        }
+    }
+
+    /** The decimal string of a number, made once and kept if it's small */
+    private static String digits(int number) {
+        if (number < 0 || number >= DIGITS.length) {
+            return Integer.toString(number);
+        }
+        if (DIGITS[number] == null) {
+            DIGITS[number] = Integer.toString(number);
+        }
+        return DIGITS[number];
     }
 }
@@ -0,0 +1,225 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import javafx.scene.media.Media;
+import javafx.scene.media.MediaException;
+
+/**
+    A {@code Library} is every song in the assets directory: one per chart (".yrct"), with its audio next to it (same name, ".mp3"). Titles and artists come from "songs.txt" in the same directory, one `<file name> | <title> | <artist>` per line; songs not listed there are named after their file.
+
+    Loading a song (parsing its chart and preparing its {@link Media}, at the same time on two virtual threads) happens in the background, and loaded songs are kept in a small least-recently-used cache, so going back to a song is instant. `prefetch` loads a song and the ones either side of it in the list ahead of time, so moving through the list on the song select screen usually finds the next song already loaded. A chart the game can't play (too few or too many lanes, or a lane with no key, see {@link Mini.Keys}) fails to load, and the select screen shows why.
+
+    A {@code Song} is where a song's files are and what it's called. An {@code Entry} is a loaded song. A {@code Metrics} hears about every request and every load, e.g. to log them; the library also keeps totals.
+ */
+public class Library {
+    private static Path DEFAULT_DIRECTORY = Path.of("../assets");
+    private static String INDEX_FILE = "songs.txt";
+    private static String AUDIO_EXTENSION = ".mp3";
+    private static int CACHE_SIZE = 4; // Enough for a song and both of its neighbours, plus the one just left
+    private static int PREFETCH_DISTANCE = 1;
+
+    /** A {@code Song} is a chart, its audio, and what to call it; its name is its file's, capitalized, which is what replays go by. */
+    public static class Song {
+        private String name;
+        private String title;
+        private String artist;
+        private Path chart;
+        private Path audio;
+
+        public Song(String name, String title, String artist, Path chart, Path audio) {
+            this.name = name;
+            this.title = title;
+            this.artist = artist;
+            this.chart = chart;
+            this.audio = audio;
+        }
+
+        // @formatter:off
+        public String get_name() { return name; }
+        public String get_title() { return title; }
+        public String get_artist() { return artist; }
+        public Path get_chart() { return chart; }
+        public Path get_audio() { return audio; }
+        // @formatter:on
+    }
+
+    /** An {@code Entry} is a song ready to play: its parsed chart, its media (null if there's no audio), and how long loading took. */
+    public static class Entry {
+        private Song song;
+        private ChartLoader.Sheet sheet;
+        private Media media;
+        private long load_time;
+
+        public Entry(Song song, ChartLoader.Sheet sheet, Media media, long load_time) {
+            this.song = song;
+            this.sheet = sheet;
+            this.media = media;
+            this.load_time = load_time;
+        }
+
+        // @formatter:off
+        public Song get_song() { return song; }
+        public ChartLoader.Sheet get_sheet() { return sheet; }
+        public Media get_media() { return media; }
+        public long get_load_time() { return load_time; }
+        // @formatter:on
+    }
+
+    /** A {@code Metrics} is told about cache requests and loads; it's called on whichever thread they happen on. */
+    public interface Metrics {
+        void requested(Song song, boolean hit);
+
+        void loaded(Song song, long load_time, boolean prefetched);
+    }
+
+    private List<Song> songs;
+    private Map<Song, CompletableFuture<Entry>> cache;
+    private ExecutorService loader;
+    private Metrics metrics;
+
+    // Totals, guarded by this
+    private long requests = 0;
+    private long hits = 0;
+    private long loads = 0;
+    private long total_load_time = 0;
+    private long max_load_time = 0;
+
+    /** A library of songs; each chart is parsed with its own lanes */
+    public Library(List<Song> songs) {
+        this.songs = songs;
+        this.cache = new LinkedHashMap<>(CACHE_SIZE * 2, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Song, CompletableFuture<Entry>> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+        this.loader = Executors.newVirtualThreadPerTaskExecutor(); // Virtual threads never keep the JVM alive
+    }
+
+    // @formatter:off
+    public List<Song> get_songs() { return songs; }
+    public void set_metrics(Metrics metrics) { this.metrics = metrics; }
+    public synchronized long get_requests() { return requests; }
+    public synchronized long get_hits() { return hits; }
+    public synchronized long get_loads() { return loads; }
+    public synchronized double get_hit_rate() { return requests == 0 ? 0 : (double) hits / requests; }
+    public synchronized long get_mean_load_time() { return loads == 0 ? 0 : total_load_time / loads; }
+    public synchronized long get_max_load_time() { return max_load_time; }
+    // @formatter:on
+
+    /** Scans the default assets directory */
+    public static Library scan() throws IOException {
+        return scan(DEFAULT_DIRECTORY);
+    }
+
+    /** Finds every chart in a directory, sorted by title */
+    public static Library scan(Path directory) throws IOException {
+        Map<String, String[]> index = new HashMap<>();
+        Path index_file = directory.resolve(INDEX_FILE);
+        if (Files.exists(index_file)) {
+            for (String line : Files.readAllLines(index_file)) {
+                String[] parts = line.split("\\|");
+                if (parts.length == 3 && !line.startsWith("#")) {
+                    index.put(parts[0].strip(), new String[] { parts[1].strip(), parts[2].strip() });
+                }
+            }
+        }
+
+        List<Song> songs = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path chart : files.filter(file -> file.toString().endsWith(".yrct")).toList()) {
+                String file_name = chart.getFileName().toString().replaceFirst("\\.yrct$", "");
+                String name = Character.toUpperCase(file_name.charAt(0)) + file_name.substring(1);
+                String[] entry = index.getOrDefault(file_name, new String[] { name, "Unknown artist" });
+                songs.add(new Song(name, entry[0], entry[1], chart, directory.resolve(file_name + AUDIO_EXTENSION)));
+            }
+        }
+        songs.sort(Comparator.comparing(Song::get_title));
+        return new Library(songs);
+    }
+
+    /** A song's entry, loading it in the background if it isn't cached; counts as a request */
+    public CompletableFuture<Entry> request(Song song) {
+        boolean hit;
+        CompletableFuture<Entry> future;
+        synchronized (this) {
+            future = cache.get(song);
+            hit = future != null;
+            if (!hit) {
+                future = load(song, false);
+            }
+            requests++;
+            if (hit) {
+                hits++;
+            }
+        }
+        if (metrics != null) {
+            metrics.requested(song, hit);
+        }
+        return future;
+    }
+
+    /** Starts loading the song at `index` and the ones either side of it, if they aren't cached yet */
+    public synchronized void prefetch(int index) {
+        for (int offset = -PREFETCH_DISTANCE; offset <= PREFETCH_DISTANCE; offset++) {
+            int neighbour = index + offset;
+            if (neighbour >= 0 && neighbour < songs.size() && !cache.containsKey(songs.get(neighbour))) {
+                load(songs.get(neighbour), true);
+            }
+        }
+    }
+
+    /** Queues a load and caches its future; call while holding this */
+    private CompletableFuture<Entry> load(Song song, boolean prefetched) {
+        long begin = System.nanoTime();
+        CompletableFuture<ChartLoader.Sheet> sheet = CompletableFuture.supplyAsync(() -> {
+            ChartLoader.Sheet loaded = ChartLoader.load_compiled(song.get_chart(), null);
+            Mini.Keys.check(loaded.get_letters()); // Fails the load, so the select screen says why instead of the game throwing
+            return loaded;
+        }, loader);
+        CompletableFuture<Media> media = CompletableFuture.supplyAsync(() -> open_media(song), loader);
+        CompletableFuture<Entry> future = sheet.thenCombine(media, (loaded_sheet, loaded_media) -> {
+            long load_time = System.nanoTime() - begin;
+            synchronized (this) {
+                loads++;
+                total_load_time += load_time;
+                max_load_time = Math.max(max_load_time, load_time);
+            }
+            if (metrics != null) {
+                metrics.loaded(song, load_time, prefetched);
+            }
+            return new Entry(song, loaded_sheet, loaded_media, load_time);
+        });
+        cache.put(song, future);
+        future.whenComplete((entry, error) -> {
+            if (error != null) {
+                synchronized (this) {
+                    cache.remove(song, future); // So the next request tries again
+                }
+            }
+        });
+        return future;
+    }
+
+    /** A song's media, or null if it has no audio or the audio can't be opened */
+    private static Media open_media(Song song) {
+        if (!Files.exists(song.get_audio())) {
+            return null;
+        }
+        try {
+            return new Media(song.get_audio().toUri().toString());
+        } catch (MediaException e) {
+            System.err.println("Couldn't open " + song.get_audio() + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -1,17 +1,29 @@
 import java.io.File;
+import java.util.EnumMap;
+import java.util.concurrent.CompletableFuture;
 
+import javafx.scene.input.KeyCode;
 import javafx.scene.media.Media;
+import javafx.scene.media.MediaException;
 import javafx.scene.media.MediaPlayer;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.text.Font;
 import javafx.scene.text.TextAlignment;
+import javafx.util.Duration;
 
 /**
     The {@code Mini} class contains accesory classes that are too small to deserve their own file.
  */
 public class Mini {
     private static String DEFAULT_FONT = "Fira Code";
+    public static String DISPLAY_FONT = "Apple Chancery"; // For the song and artist behind the lanes
+
+    /** Looks up every font the game uses, so the first {@code Text} doesn't have to; the first lookup scans the system's fonts, which takes a while. Safe off the FX thread. */
+    public static void preload_fonts() {
+        Font.font(DEFAULT_FONT, 12.0);
+        new Font(DISPLAY_FONT, 12.0);
+    }
 
     /** A {@code Spacer} takes up space to help position other nodes. */
     public static class Spacer extends Rectangle {
@@ -40,6 +52,17 @@ public class Mini {
         ON_FLOOR,
     }
 
+    /** The {@code RendererType} enum is of ways to draw the lanes; pick one with `--renderer=nodes` or `--renderer=canvas`. */
+    public enum RendererType {
+        NODES,
+        CANVAS;
+
+        /** Parses a command line value, defaulting to nodes */
+        public static RendererType parse(String name) {
+            return name != null && name.equalsIgnoreCase("canvas") ? CANVAS : NODES;
+        }
+    }
+
     /** The {@code ChartType} enum is of statistical measures. */
     public enum ChartType {
         POWER("Power"),
@@ -78,18 +101,52 @@ public class Mini {
         // @formatter:on
     }
 
-    /** The {@code LetterType} enum is of the keys you use. */
-    public enum LetterType {
-        D("D"), F("F"), J("J"), K("K");
+    /** The {@code Keys} class maps lane letters to the keys that play them, and knows the usual layout for every lane count (4 to 10). */
+    public abstract static class Keys {
+        public static int MIN_LANES = 4;
+        public static int MAX_LANES = 10;
+        private static String[] LAYOUTS = { "DFJK", "DF_JK", "SDFJKL", "SDF_JKL", "ASDFJKL;", "ASDF_JKL;", "ASDFVNJKL;" };
 
-        private String letter;
+        /** The usual letters for a number of lanes, e.g. S D F _ J K L for seven */
+        public static String[] layout(int lane_count) {
+            if (lane_count < MIN_LANES || lane_count > MAX_LANES) {
+                throw new IllegalArgumentException(lane_count + " lanes; " + MIN_LANES + " to " + MAX_LANES + " are supported");
+            }
+            return LAYOUTS[lane_count - MIN_LANES].split("");
+        }
 
-        LetterType(String letter) {
-            this.letter = letter;
+        /** Throws an IllegalArgumentException unless the game can play a chart with these lane letters: a supported number of them, each with a key of its own (`d` and `D` are both the D key) */
+        public static void check(String[] letters) {
+            if (letters.length < MIN_LANES || letters.length > MAX_LANES) {
+                throw new IllegalArgumentException("The chart has " + letters.length + " lanes; "
+                        + MIN_LANES + " to " + MAX_LANES + " are supported");
+            }
+            EnumMap<KeyCode, String> taken = new EnumMap<>(KeyCode.class);
+            for (String letter : letters) {
+                KeyCode code = key_of(letter);
+                if (code == null) {
+                    throw new IllegalArgumentException("No key for lane " + letter);
+                }
+                String other = taken.put(code, letter);
+                if (other != null) {
+                    throw new IllegalArgumentException("Lanes " + other + " and " + letter + " are both played with " + code.getName());
+                }
+            }
         }
 
-        public String toString() {
-            return letter;
+        /** The key for a lane letter: letters and digits are themselves, `_` is the space bar, and `;` `,` `.` `/` `'` `[` `]` are what they look like; null for anything else */
+        public static KeyCode key_of(String letter) {
+            return switch (letter) {
+                case "_" -> KeyCode.SPACE;
+                case ";" -> KeyCode.SEMICOLON;
+                case "," -> KeyCode.COMMA;
+                case "." -> KeyCode.PERIOD;
+                case "/" -> KeyCode.SLASH;
+                case "'" -> KeyCode.QUOTE;
+                case "[" -> KeyCode.OPEN_BRACKET;
+                case "]" -> KeyCode.CLOSE_BRACKET;
+                default -> KeyCode.getKeyCode(letter.toUpperCase());
+            };
         }
     }
 
@@ -102,34 +159,118 @@ public class Mini {
         public static String SONG_NAME;
         public static String ARTIST_NAME;
 
-        private static int hits = 0;
-        private static int misses = 0;
-        private static int losses = 0;
-        private static int combo = 0;
+        // The scoreboard belongs to the {@link Engine}; this just makes it easy to find
+        private static volatile Scoreboard scoreboard = new Scoreboard(); // Volatile, since any thread may read it
 
         // @formatter:off
-        public static void add_hit() { hits++; combo++; }
-        public static void add_miss() { misses++; }
-        public static void add_loss() { losses++; combo = 0; }
-        public static int get_hits() { return hits; }
-        public static int get_misses() { return misses; }
-        public static int get_losses() { return losses; }
-        public static int get_combo() { return combo; }
+        public static void set_scoreboard(Scoreboard new_scoreboard) { scoreboard = new_scoreboard; }
+        public static Scoreboard get_scoreboard() { return scoreboard; }
+        public static Scoreboard.Snapshot get_snapshot() { return scoreboard.get_snapshot(); }
         // @formatter:on
     }
 
-    /* Plays music. Only works some of the time for some reason. I don't know why. */
-    public static class Music extends Thread {
-        private String music_file;
+    /* Plays music. Only works some of the time for some reason. I don't know why.
+
+        The MediaPlayer is only asked where it is on the FX thread, by `sample` once a frame; the simulation thread reads the {@code Sample} that left, carried on by however long ago it was taken, since a MediaPlayer's properties aren't for other threads to read. */
+    public static class Music {
+        private Media sound;
+        private volatile MediaPlayer media_player; // Made on a background thread by `prepare`
+        private volatile Sample sample; // Null while not playing
+
+        /** Where the player was at a System.nanoTime() instant, and how fast it was going; never changes once made */
+        private static class Sample {
+            private long position;
+            private long time;
+            private double rate;
+
+            public Sample(long position, long time, double rate) {
+                this.position = position;
+                this.time = time;
+                this.rate = rate;
+            }
+        }
 
         public Music(String music_file) {
-            this.music_file = music_file;
+            this(new Media(new File(music_file).toURI().toString()));
+        }
+
+        /** Plays media that was already prepared (see {@link Library}); null plays nothing */
+        public Music(Media sound) {
+            this.sound = sound;
+        }
+
+        /** Makes the player on a virtual thread; completes once it's ready to play, or once it's clear it never will be (the {@link GameClock} copes with silence) */
+        public CompletableFuture<Void> prepare() {
+            CompletableFuture<Void> ready = new CompletableFuture<>();
+            if (sound == null) {
+                ready.complete(null);
+                return ready;
+            }
+            Thread.startVirtualThread(() -> {
+                try {
+                    MediaPlayer player = new MediaPlayer(sound);
+                    player.setOnReady(() -> ready.complete(null));
+                    player.setOnError(() -> ready.complete(null));
+                    media_player = player;
+                    if (player.getStatus() == MediaPlayer.Status.READY) {
+                        ready.complete(null); // Became ready before the handler was set
+                    }
+                } catch (MediaException e) {
+                    System.err.println("Couldn't play " + sound.getSource() + ": " + e.getMessage());
+                    ready.complete(null);
+                }
+            });
+            return ready;
+        }
+
+        /** Starts playing; call after `prepare` has completed */
+        public void play() {
+            if (media_player != null) {
+                media_player.play();
+            }
+        }
+
+        /** Stops for good and lets go of the player; the media can be played again by a new {@code Music} */
+        public void halt() {
+            if (media_player != null) {
+                media_player.stop();
+                media_player.dispose();
+                media_player = null;
+            }
+            sample = null;
+        }
+
+        /** Jumps to a playback position in nanoseconds (see {@link GameClock}'s `to_audio_position`) */
+        public void seek(long position) {
+            if (media_player != null) {
+                media_player.seek(Duration.millis(Math.max(0, position) / 1e6));
+            }
+        }
+
+        /** Plays faster or slower than normal, 1.0 being normal */
+        public void set_rate(double rate) {
+            if (media_player != null) {
+                media_player.setRate(rate);
+            }
+        }
+
+        /** Reads where the player is; only on the FX thread, once a frame */
+        public void sample() {
+            MediaPlayer player = media_player;
+            if (player == null || player.getStatus() != MediaPlayer.Status.PLAYING) {
+                sample = null;
+                return;
+            }
+            sample = new Sample((long) (player.getCurrentTime().toMillis() * 1e6), System.nanoTime(), player.getRate());
         }
 
-        public void run() {
-            Media sound = new Media(new File(music_file).toURI().toString());
-            MediaPlayer media_player = new MediaPlayer(sound);
-            media_player.play();
+        /** Playback position in nanoseconds as of the last sample plus the time since, or -1 if the music isn't playing (yet); feeds the {@link GameClock}, from any thread */
+        public long get_position() {
+            Sample last = sample;
+            if (last == null) {
+                return -1;
+            }
+            return last.position + (long) ((System.nanoTime() - last.time) * last.rate);
         }
     }
 
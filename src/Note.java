@@ -0,0 +1,118 @@
+import javafx.scene.effect.DropShadow;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Circle;
+
+/**
+    A {@code Note} is one circle falling down a {@link NoteManager}'s trace. It knows which note of the chart it is, when it was due to spawn and, from that and the visual time, where it is and whether it has reached the target. Notes come from the {@link NotePool} rather than being made and dropped one per spawn.
+
+    Every note of a colour shares one shadow, so a new quality tier (see `set_quality`) reaches them all by resizing a handful of shadows.
+ */
+class Note extends Circle {
+    private static Color[] LINE_COLORS = Nord.ALL_AURORA;
+    private static Color FILL_COLOR = Nord.NIGHT_DARK;
+    private static double RADIUS = 15.0;
+    private static double SHADOW_RADIUS = 10.0;
+    private static DropShadow[] SHADOWS = create_shadows();
+    private static boolean shadowed = true;
+    private static boolean fades_in = true;
+
+    private static int color_index;
+    private int line_color_index;
+    private Color line_color;
+    private long creation_time;
+    private int chart_index;
+    private double y_displacement;
+    private Mini.NoteStatus status;
+    private double opacity;
+
+    /** Creates a blank note; {@link NotePool} resets it before it is used */
+    public Note() {
+        setRadius(RADIUS);
+        setFill(FILL_COLOR);
+    }
+
+    /** Resizes or drops every note's shadow and turns fading in on or off; existing notes then need `apply_quality` */
+    public static void set_quality(QualityGovernor.Tier tier) {
+        shadowed = tier.has_shadows();
+        fades_in = tier.has_fade_in();
+        for (DropShadow shadow : SHADOWS) {
+            shadow.setRadius(shadowed ? tier.get_shadow_radius() : SHADOW_RADIUS);
+        }
+    }
+
+    /** One shadow per colour, shared by every note of that colour */
+    private static DropShadow[] create_shadows() {
+        DropShadow[] shadows = new DropShadow[LINE_COLORS.length];
+        for (int i = 0; i < shadows.length; i++) {
+            shadows[i] = new DropShadow(SHADOW_RADIUS, LINE_COLORS[i]);
+        }
+        return shadows;
+    }
+
+    /** Makes this a fresh note that was due to spawn at `creation_time` (song time, from the {@link GameClock}) */
+    public void reset(long creation_time, int chart_index) {
+        this.line_color_index = next_color_index();
+        this.creation_time = creation_time;
+        this.chart_index = chart_index;
+        this.y_displacement = 0.0;
+        this.opacity = 0.0;
+        this.status = Mini.NoteStatus.ON_TRACE;
+        this.line_color = LINE_COLORS[line_color_index];
+
+        setOpacity(opacity);
+        setStroke(line_color);
+        apply_quality();
+        relocate(15.0, y_displacement);
+    }
+
+    /** Colours go round in turn, whichever lane the note is in */
+    public static int next_color_index() {
+        return color_index++ % LINE_COLORS.length;
+    }
+
+    /** How far down the trace a note that spawned at `creation_time` is at `time` */
+    public static double y_displacement_at(long creation_time, long time) {
+        return Engine.get_fall_fraction(creation_time, time) * NoteManager.get_height();
+    }
+
+    /** How opaque a note that far down the trace is; it fades in over the first tenth, if the quality tier fades at all */
+    public static double fade_at(double y_displacement) {
+        return fades_in ? Math.min(1.0, (10 * y_displacement) / NoteManager.get_height()) : 1.0;
+    }
+
+    /** Puts on or takes off this note's shadow after `set_quality` */
+    public void apply_quality() {
+        setEffect(shadowed ? SHADOWS[line_color_index] : null);
+    }
+
+    // @formatter:off
+    public static double get_note_radius() { return RADIUS; }
+    public static double get_shadow_radius() { return shadowed ? SHADOWS[0].getRadius() : 0.0; }
+    public static Color get_fill_color() { return FILL_COLOR; }
+    public static Color[] get_line_colors() { return LINE_COLORS; }
+    public Mini.NoteStatus get_status() { return status; }
+    public long get_creation_time() { return creation_time; }
+    public int get_chart_index() { return chart_index; }
+    public int get_line_color_index() { return line_color_index; }
+    public double get_y_displacement() { return y_displacement; }
+    public double get_fade() { return opacity; }
+    // @formatter:on
+
+    public void handle_timestep(long time) {
+        y_displacement = y_displacement_at(creation_time, time);
+
+        opacity = fade_at(y_displacement);
+        setOpacity(opacity);
+        relocate(15.0, y_displacement);
+
+        double distance_to_bottom = NoteManager.get_height() - y_displacement;
+
+        if (distance_to_bottom <= 15.0) {
+            status = Mini.NoteStatus.ON_FLOOR;
+        } else if (distance_to_bottom <= NoteManager.get_hitbox_size()) {
+            status = Mini.NoteStatus.ON_TARGET;
+        } else {
+            status = Mini.NoteStatus.ON_TRACE;
+        }
+    }
+}
@@ -1,7 +1,6 @@
-import java.io.File;
 import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.Scanner;
+import java.util.Arrays;
+import javafx.geometry.Point2D;
 import javafx.geometry.Pos;
 import javafx.scene.effect.DropShadow;
 import javafx.scene.layout.Pane;
@@ -12,47 +11,73 @@ import javafx.scene.shape.Circle;
 import javafx.scene.shape.Line;
 
 /**
-    A {@code} NoteManager} is the high-level interface for managing Notes. It is the most complex of the Managers: it adds, removes, and updates notes, and draws a trace.
+    A {@code} NoteManager} is the high-level interface for managing Notes. It draws a trace and one lane of the {@link Engine}'s notes: the engine decides when notes spawn and when they are struck or lost, and `distribute_timestep` (called by an animation timer) brings the drawn notes in line with that. What the engine decided comes in as an {@link EngineState}, which is either the engine itself or the latest frame of the {@link Simulation} running it.
 
-    The chart object it holds is a list of Longs read in from a `.yrct` file; see "cadente.yrct" as an example. That file also contains the file format specification. It details when to create new notes. `oversight`, `distribute_timestep`, and `spawn_note` should be called by an animation timer; `strike_note` should be attached to an event.
+    The engine's chart comes from a `.yrct` file; see "cadente.yrct" as an example. That file also contains the file format specification. It details when to create new notes.
 
-    The {@code Note}s are circles that know their status and if they can be struck or not. Like many other features, it is hooked up to a timer by "time since start" rather than the previous position to ensure the notes are synced up with the music.
+    The {@link Note}s are circles that know their status and where they are. Like many other features, it is hooked up to the {@link GameClock} by "time since start" rather than the previous position to ensure the notes are synced up with the music.
+
+    Shadows on the trace, target and notes, and whether notes fade in, follow the {@link QualityGovernor}'s tier. Every note of a colour shares one shadow, so a new radius reaches them all at once.
+
+    A NoteManager can also be told not to draw anything itself, in which case a {@link LaneCanvas} draws its notes instead. Then there are no Notes at all: all the canvas needs of a note is when it spawned and its colour, so the live notes are kept as parallel arrays of spawn time, chart index and colour, and where each one is and how faded is worked out as it is drawn.
+
+    Struck and lost notes go back to the {@link NotePool} for reuse.
  */
 public class NoteManager extends StackPane {
     private static double WIDTH = 60.0;
     private static double HITBOX_SIZE = 100.0;
     private static double HEIGHT = 600.0;
-    private static double FALLING_TIME_SEC = 2;
     private static Color TRACE_COLOR = Nord.FROST_TEAL;
 
-    private ArrayList<Note> notes;
+    private ArrayList<Note> notes; // Only when drawing notes
+    private long[] spawn_times; // Only when not, with chart_indexes and color_indexes; the first `live` are in use
+    private int[] chart_indexes;
+    private int[] color_indexes;
+    private int live;
     private Pane note_area;
-    private Mini.LetterType letter_type;
-    private LinkedList<Long> chart;
-
-    public NoteManager(Mini.LetterType letter_type) {
-        this.letter_type = letter_type;
+    private String letter;
+    private Engine engine;
+    private int lane;
+    private int seen; // Chart index up to which notes have been picked up from the engine
+    private boolean draws_notes;
+    private DropShadow trace_shadow;
+    private Line line;
+    private Circle circle;
+
+    public NoteManager(String letter, Engine engine, int lane, boolean draws_notes) {
+        this.letter = letter;
+        this.engine = engine;
+        this.lane = lane;
+        this.seen = 0;
+        this.draws_notes = draws_notes;
         notes = new ArrayList<>();
-        chart = load_chart();
+        spawn_times = new long[64];
+        chart_indexes = new int[64];
+        color_indexes = new int[64];
+        live = 0;
 
         setPrefSize(WIDTH, HEIGHT);
         setAlignment(Pos.TOP_CENTER);
 
         note_area = new Pane();
+        if (!draws_notes) {
+            return;
+        }
         VBox note_area_centering = new VBox(note_area);
         note_area_centering.setAlignment(Pos.CENTER);
         note_area.setPrefSize(WIDTH, HEIGHT);
 
-        Line line = new Line(0.0, 0.0, 0.0, HEIGHT - WIDTH);
+        trace_shadow = new DropShadow(10.0, TRACE_COLOR);
+        line = new Line(0.0, 0.0, 0.0, HEIGHT - WIDTH);
         line.setStroke(TRACE_COLOR);
-        line.setEffect(new DropShadow(10.0, TRACE_COLOR));
+        line.setEffect(trace_shadow);
 
-        Circle circle = new Circle(WIDTH / 2.0);
+        circle = new Circle(WIDTH / 2.0);
         circle.setFill(Nord.NIGHT_DARK);
         circle.setStroke(TRACE_COLOR);
-        circle.setEffect(new DropShadow(10.0, TRACE_COLOR));
+        circle.setEffect(trace_shadow);
 
-        Mini.Text label = new Mini.Text(letter_type.toString(), 18.0);
+        Mini.Text label = new Mini.Text(letter, 18.0);
 
         StackPane target = new StackPane(circle, label);
         target.setAlignment(Pos.CENTER);
@@ -64,142 +89,121 @@ public class NoteManager extends StackPane {
     }
 
     // @formatter:off
+    public static double get_width() { return WIDTH; }
     public static double get_height() { return HEIGHT; }
+    public static Color get_trace_color() { return TRACE_COLOR; }
+    public String get_letter() { return letter; }
+    public ArrayList<Note> get_notes() { return notes; }
+    public int get_live_count() { return draws_notes ? notes.size() : live; }
+    public long get_spawn_time(int i) { return spawn_times[i]; }
+    public int get_color_index(int i) { return color_indexes[i]; }
     public static double get_hitbox_size() { return HITBOX_SIZE; }
-    public static double get_falling_time() { return FALLING_TIME_SEC; }
     // @formatter:on
 
-    /** Notify all notes to relocate to the appropiate position. */
-    public void distribute_timestep() {
+    /** Sizes or drops the trace's and notes' shadows for a quality tier (see {@link Note} for fading in) */
+    public void set_quality(QualityGovernor.Tier tier) {
         for (Note note : notes) {
-            note.handle_timestep();
+            note.apply_quality();
         }
-    }
-
-    /** Manage notes and delete them as necessary. */
-    public void oversight() {
-        if (notes.isEmpty()) {
+        if (!draws_notes) {
             return;
         }
-        Note first = notes.getFirst();
-
-        if (first.get_status() == Mini.NoteStatus.ON_FLOOR) {
-            note_area.getChildren().remove(first);
-            notes.remove(first);
-            Mini.Messenger.add_loss();
+        if (tier.has_shadows()) {
+            trace_shadow.setRadius(tier.get_shadow_radius());
         }
+        line.setEffect(tier.has_shadows() ? trace_shadow : null);
+        circle.setEffect(tier.has_shadows() ? trace_shadow : null);
     }
 
-    /** Loads chart from external JSON */
-    private LinkedList<Long> load_chart() {
-        LinkedList<Long> chart = new LinkedList<>();
-        long delay = 0;
-        long beat_spacing = 0;
-
-        String chart_file_path = "../assets/" + Mini.Messenger.SONG_NAME.toLowerCase() + ".yrct";
-        try (Scanner scanner = new Scanner(new File(chart_file_path))) {
-            delay = (long) (1e9 * scanner.nextDouble());
-            beat_spacing = (long) ((1e9 / scanner.nextInt()) * 60);
-
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                if (line.equals(letter_type.toString())) {
-                    while (scanner.hasNextLong()) {
-                        long beat = scanner.nextLong();
-                        chart.addLast(delay + beat_spacing * beat);
-                    }
-                    break;
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return chart;
+    /** Where the centre of the target circle is, in scene coordinates */
+    public Point2D get_target_center() {
+        return localToScene(WIDTH / 2.0, HEIGHT - WIDTH / 2.0);
     }
 
-    /** Consults the chart to determine if it's time to spawn a note */
-    public void consult_chart(long start, long now) {
-        if (chart.isEmpty()) {
-            return;
-        }
-
-        long first = chart.getFirst();
-        if (first < now - start) {
-            note_area.getChildren().add(new Note());
-            notes.add((Note) note_area.getChildren().getLast());
-            chart.removeFirst();
+    /** Catches up with the engine's state, then notifies all notes to relocate to the appropiate position for its visual time. */
+    public void distribute_timestep(EngineState state) {
+        oversight(state);
+        consult_engine(state);
+        for (Note note : notes) {
+            note.handle_timestep(state.get_visual_time());
         }
     }
 
-    /** Handle attempt to hit note (presumably kepress); update Messenger */
-    public boolean strike_note(String letter) {
-        if (!letter.equalsIgnoreCase(letter_type.toString())) {
-            return false;
+    /** Removes notes the engine has resolved (struck or lost); call right after a strike to not wait a frame */
+    public void oversight(EngineState state) {
+        if (!draws_notes) {
+            int kept = 0;
+            for (int i = 0; i < live; i++) {
+                if (!state.is_resolved(lane, chart_indexes[i])) {
+                    spawn_times[kept] = spawn_times[i];
+                    chart_indexes[kept] = chart_indexes[i];
+                    color_indexes[kept++] = color_indexes[i];
+                }
+            }
+            live = kept;
+            return;
         }
-        if (notes.isEmpty()) {
-            Mini.Messenger.add_miss();
-            return false;
+        int kept = 0;
+        for (int i = 0; i < notes.size(); i++) {
+            Note note = notes.get(i);
+            if (state.is_resolved(lane, note.get_chart_index())) {
+                retire(note);
+            } else {
+                notes.set(kept++, note);
+            }
         }
-
-        Note first = notes.getFirst();
-        if (first.get_status() == Mini.NoteStatus.ON_TARGET) {
-            note_area.getChildren().remove(first);
-            notes.remove(first);
-            Mini.Messenger.add_hit();
-            return true;
-        } else {
-            Mini.Messenger.add_miss();
-            return false;
+        while (notes.size() > kept) {
+            notes.removeLast();
         }
     }
-}
 
-class Note extends Circle {
-    private static Color[] LINE_COLORS = Nord.ALL_AURORA;
-    private static Color FILL_COLOR = Nord.NIGHT_DARK;
-    private static double RADIUS = 15.0;
-    private static double SHADOW_RADIUS = 10.0;
-
-    private static int color_index;
-    private Color line_color;
-    private long creation_time;
-    private double y_displacement;
-    private Mini.NoteStatus status;
-    private double opacity;
-
-    public Note() {
-        this.creation_time = System.nanoTime();
-        this.y_displacement = 0.0;
-        this.opacity = 0.0;
-        this.status = Mini.NoteStatus.ON_TRACE;
-        this.line_color = LINE_COLORS[color_index++ % LINE_COLORS.length];
-
-        setOpacity(opacity);
-        setStroke(line_color);
-        setRadius(RADIUS);
-        setFill(FILL_COLOR);
-        setEffect(new DropShadow(SHADOW_RADIUS, line_color));
+    /** Retires every note, whether or not the engine has resolved it */
+    public void clear() {
+        for (Note note : notes) {
+            retire(note);
+        }
+        notes.clear();
+        live = 0;
     }
 
-    // @formatter:off
-    public Mini.NoteStatus get_status() { return status; }
-    // @formatter:on
-
-    public void handle_timestep() {
-        y_displacement = ((double) (System.nanoTime() - creation_time) / NoteManager.get_falling_time() / 1e9)
-                * NoteManager.get_height();
-
-        setOpacity(Math.min(1.0, (10 * y_displacement) / NoteManager.get_height()));
-        relocate(15.0, y_displacement);
+    /** Retires every note and picks up again from the engine's first live one, after the engine has seeked */
+    public void rewind(EngineState state) {
+        clear();
+        seen = state.get_first_live(lane);
+    }
 
-        double distance_to_bottom = NoteManager.get_height() - y_displacement;
+    /** Picks up every note the engine has spawned since the last frame */
+    private void consult_engine(EngineState state) {
+        int spawned = state.get_spawned(lane);
+        for (; seen < spawned; seen++) {
+            if (state.is_resolved(lane, seen)) {
+                continue;
+            }
+            if (draws_notes) {
+                Note note = NotePool.obtain(engine.get_time(lane, seen), seen);
+                note_area.getChildren().add(note);
+                notes.add(note);
+            } else {
+                mark(engine.get_time(lane, seen), seen);
+            }
+        }
+    }
 
-        if (distance_to_bottom <= 15.0) {
-            status = Mini.NoteStatus.ON_FLOOR;
-        } else if (distance_to_bottom <= NoteManager.get_hitbox_size()) {
-            status = Mini.NoteStatus.ON_TARGET;
-        } else {
-            status = Mini.NoteStatus.ON_TRACE;
+    /** Keeps a note for the canvas to draw */
+    private void mark(long spawn_time, int chart_index) {
+        if (live == spawn_times.length) {
+            spawn_times = Arrays.copyOf(spawn_times, live * 2);
+            chart_indexes = Arrays.copyOf(chart_indexes, live * 2);
+            color_indexes = Arrays.copyOf(color_indexes, live * 2);
         }
+        spawn_times[live] = spawn_time;
+        chart_indexes[live] = chart_index;
+        color_indexes[live++] = Note.next_color_index();
+    }
+
+    /** Takes a note off the trace and gives it back to the pool */
+    private void retire(Note note) {
+        note_area.getChildren().remove(note);
+        NotePool.release(note);
     }
 }
@@ -0,0 +1,48 @@
+import java.util.ArrayDeque;
+
+/**
+    The {@code NotePool} keeps struck and lost {@link Note}s around for reuse, since at high note density allocating a circle per spawn (and dropping it a few seconds later) shows up as garbage collection pauses. Every lane's {@link NoteManager} shares the one pool (only when the lanes are drawn as nodes; a canvas has no Notes), and it keeps count of how well it is doing.
+
+    Like the scene graph it feeds, it is only ever touched from the FX thread.
+ */
+class NotePool {
+    private static int MAX_IDLE = 256;
+
+    private static ArrayDeque<Note> idle = new ArrayDeque<>();
+    private static long hits = 0;
+    private static long misses = 0;
+    private static int in_use = 0;
+    private static int in_use_high_water = 0;
+    private static int idle_high_water = 0;
+
+    // @formatter:off
+    public static long get_hits() { return hits; }
+    public static long get_misses() { return misses; }
+    public static int get_in_use() { return in_use; }
+    public static int get_in_use_high_water() { return in_use_high_water; }
+    public static int get_idle_high_water() { return idle_high_water; }
+    // @formatter:on
+
+    /** Hands out a note due to spawn at `creation_time` (song time), recycled if possible */
+    public static Note obtain(long creation_time, int chart_index) {
+        Note note = idle.pollLast();
+        if (note == null) {
+            misses++;
+            note = new Note();
+        } else {
+            hits++;
+        }
+        note.reset(creation_time, chart_index);
+        in_use_high_water = Math.max(in_use_high_water, ++in_use);
+        return note;
+    }
+
+    /** Takes back a note that is no longer in any scene */
+    public static void release(Note note) {
+        in_use--;
+        if (idle.size() < MAX_IDLE) {
+            idle.addLast(note);
+            idle_high_water = Math.max(idle_high_water, idle.size());
+        }
+    }
+}
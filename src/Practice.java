@@ -0,0 +1,110 @@
+import java.util.Map;
+import javafx.application.Platform;
+import javafx.scene.input.KeyCode;
+
+/**
+    {@code Practice} mode is for drilling the hard part of a song instead of playing all of it every time. It starts the song at `--from=<s>`, loops back there whenever the song reaches `--to=<s>` (or plays on to the end if there is no `--to`), and plays at `--rate=<x>` times normal speed. Start the game with `--practice` plus any of those; nothing is recorded as a {@link Replay}, since a replay has to be played straight through.
+
+    While playing, left and right jump five seconds back and forward, up and down play a quarter faster or slower (between a quarter and double speed), and home goes back to the start of the section.
+
+    Jumping is cheap whatever the length of the chart: the {@link Engine} binary searches every lane for where it should be and the drawn notes are picked up again from there (see `seek` in {@link Engine} and {@link ChartLoader}). The music is told to seek to the same place and the {@link GameClock} ignores it until it has, then carries on following it. The rate goes to both the music player and the clock, and since the chart, the judgement windows and the fall speed are all measured in song time, they all slow down with the music.
+
+    Jumps asked for with keys go to the {@link Simulation} as requests for its next step; looping happens on the simulation thread itself, as a {@code Listener}, so the section ends at the same point in the chart every time however the frames are going.
+ */
+public class Practice implements Simulation.Listener {
+    private static long SKIP = 5_000_000_000L; // 5 s
+    private static double RATE_STEP = 0.25;
+    private static double MIN_RATE = 0.25;
+    private static double MAX_RATE = 2.0;
+
+    private long from;
+    private long to; // Long.MAX_VALUE to not loop
+    private volatile double rate;
+    private Simulation simulation;
+    private volatile Mini.Music music; // Null until started
+    private GameClock clock;
+    private volatile int loops = 0;
+
+    /** Practises from a song time to another (Long.MAX_VALUE to play to the end) at a playback rate */
+    public Practice(long from, long to, double rate) {
+        if (to <= from) {
+            throw new IllegalArgumentException("The section ends before it starts: " + from + " to " + to);
+        }
+        this.from = Math.max(0, from);
+        this.to = to;
+        this.rate = Math.clamp(rate, MIN_RATE, MAX_RATE);
+    }
+
+    /** A section from the command line's named options, `from` and `to` in seconds and `rate` */
+    public static Practice from_options(Map<String, String> named) {
+        long from = (long) (Double.parseDouble(named.getOrDefault("from", "0")) * 1e9);
+        long to = named.containsKey("to") ? (long) (Double.parseDouble(named.get("to")) * 1e9) : Long.MAX_VALUE;
+        return new Practice(from, to, Double.parseDouble(named.getOrDefault("rate", "1")));
+    }
+
+    // @formatter:off
+    public long get_from() { return from; }
+    public long get_to() { return to; }
+    public double get_rate() { return rate; }
+    public int get_loops() { return loops; }
+    // @formatter:on
+
+    /** Sets the rate and jumps to the start of the section; call on the FX thread once the simulation has started and the music is playing */
+    public void start(Simulation simulation, Mini.Music music, GameClock clock) {
+        this.simulation = simulation;
+        this.music = music;
+        this.clock = clock;
+        simulation.request_rate(rate);
+        music.set_rate(rate);
+        seek(from);
+    }
+
+    /** Loops: back to the start of the section once the song has reached its end */
+    @Override
+    public void stepping(Simulation simulation, long song_time) {
+        if (music == null || song_time < to) {
+            return;
+        }
+        loops++;
+        simulation.seek(from);
+        Platform.runLater(() -> music.seek(clock.to_audio_position(from)));
+    }
+
+    /** Handles a practice key on the FX thread, given the song time of the latest frame; false if the key isn't one */
+    public boolean press(KeyCode code, long song_time) {
+        if (simulation == null) {
+            return false;
+        }
+        switch (code) {
+            case LEFT -> seek(Math.max(0, song_time - SKIP));
+            case RIGHT -> seek(song_time + SKIP);
+            case HOME -> seek(from);
+            case UP, DOWN -> {
+                rate = Math.clamp(rate + (code == KeyCode.UP ? RATE_STEP : -RATE_STEP), MIN_RATE, MAX_RATE);
+                simulation.request_rate(rate);
+                music.set_rate(rate);
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** What is being practised, for the screen, e.g. "Practice 1:05.0 to 1:20.0 at 0.75x" */
+    public String describe() {
+        String section = to == Long.MAX_VALUE ? "from " + format(from) : format(from) + " to " + format(to);
+        return String.format("Practice %s at %.2fx", section, rate);
+    }
+
+    /** Jumps the game and the music to a song time */
+    private void seek(long song_time) {
+        simulation.request_seek(song_time);
+        music.seek(clock.to_audio_position(song_time));
+    }
+
+    private static String format(long time) {
+        double seconds = time / 1e9;
+        return String.format("%d:%04.1f", (long) seconds / 60, seconds % 60);
+    }
+}
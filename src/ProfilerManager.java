@@ -0,0 +1,221 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javafx.geometry.Pos;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.layout.Background;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.TextAlignment;
+
+/**
+    A {@code ProfilerManager} times every stage of the timer in "Yuri.java" and can show what it found as an overlay: p50, p99 and max per stage, the frame interval and its jitter, how many nodes are in the scene and notes and sparkles are live, the {@link QualityGovernor}'s tier, and how fast the FX thread is allocating. It is opt-in: with `--profile` it records from the start, otherwise pressing F3 (which also shows and hides the overlay) starts it. When the song ends, whatever was recorded is written to "profile-<song>.txt".
+
+    The timer calls `begin` at the top of a frame and `lap` after each stage. JavaFX doesn't say how long it spends rendering, but it does say when layout starts and ends, so layout gets its own stage and rendering is what is left of the frame interval. Every frame is also emitted as a {@link Flight} event.
+
+    Each stage's durations go in a {@link Histogram}, so it costs the same memory however long the song is.
+ */
+public class ProfilerManager extends VBox {
+    private static double FONT_SIZE = 12.0;
+    private static long REFRESH_INTERVAL = 250_000_000L; // 4 Hz, the overlay itself isn't free
+
+    /** The {@code Stage} enum is of the parts of a frame that are timed. */
+    public enum Stage {
+        CLOCK("Clock"),
+        GAMEPLAY("Gameplay"),
+        CHARTS("Charts"),
+        LABELS("Labels"),
+        SPARKLES("Sparkles"),
+        LAYOUT("Layout"),
+        FRAME("Frame interval");
+
+        private String name;
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        public String toString() {
+            return name;
+        }
+    }
+
+    private Histogram[] histograms;
+    private Mini.Text report;
+    private boolean recording;
+    private boolean dumped = false;
+    private long last_frame = -1;
+    private long interval;
+    private long last_lap;
+    private long[] stage_times = new long[Stage.values().length];
+    private long layout_start;
+
+    // Frame interval mean and variance (Welford), for jitter
+    private long interval_count = 0;
+    private double interval_mean = 0;
+    private double interval_square_sum = 0;
+
+    // Allocation rate and counts, refreshed with the overlay
+    private long last_refresh = -1;
+    private long last_allocated = -1;
+    private double allocation_rate = 0;
+    private int live_notes;
+    private int live_sparkles;
+    private String quality;
+
+    public ProfilerManager(boolean recording) {
+        this.recording = recording;
+        histograms = new Histogram[Stage.values().length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+        }
+
+        setMouseTransparent(true);
+        setVisible(false);
+        setMaxSize(USE_PREF_SIZE, USE_PREF_SIZE);
+        setAlignment(Pos.TOP_LEFT);
+        setBackground(Background.fill(Nord.NIGHT_DARKEST.deriveColor(0, 1, 1, 0.8)));
+        report = new Mini.Text("", FONT_SIZE);
+        report.setTextAlignment(TextAlignment.LEFT);
+        getChildren().add(report);
+    }
+
+    // @formatter:off
+    public boolean is_recording() { return recording; }
+    public Histogram get_histogram(Stage stage) { return histograms[stage.ordinal()]; }
+    // @formatter:on
+
+    /** Shows or hides the overlay, and starts recording if it wasn't already */
+    public void toggle() {
+        recording = true;
+        setVisible(!isVisible());
+    }
+
+    /** Marks the start of a frame, at the `now` the timer was given */
+    public void begin(long now) {
+        interval = last_frame < 0 ? 0 : now - last_frame;
+        last_frame = now;
+        last_lap = System.nanoTime();
+        if (!recording || interval == 0) {
+            return;
+        }
+        histograms[Stage.FRAME.ordinal()].record(interval);
+        interval_count++;
+        double delta = interval - interval_mean;
+        interval_mean += delta / interval_count;
+        interval_square_sum += delta * (interval - interval_mean);
+    }
+
+    /** Marks the end of a stage that started when the previous one ended */
+    public void lap(Stage stage) {
+        long time = System.nanoTime();
+        stage_times[stage.ordinal()] = time - last_lap;
+        last_lap = time;
+        if (recording) {
+            histograms[stage.ordinal()].record(stage_times[stage.ordinal()]);
+        }
+    }
+
+    /** Marks the end of the timed stages; the frame goes to the flight recorder whether or not this is recording */
+    public void end(long song_time) {
+        Flight.frame(interval, stage_times, song_time);
+    }
+
+    /** For a pre-layout pulse listener */
+    public void begin_layout() {
+        layout_start = System.nanoTime();
+    }
+
+    /** For a post-layout pulse listener */
+    public void end_layout() {
+        if (recording) {
+            histograms[Stage.LAYOUT.ordinal()].record(System.nanoTime() - layout_start);
+        }
+    }
+
+    /** Redraws the overlay every so often while it's showing; `scene_root` is counted for live nodes */
+    public void distribute_timestep(long now, Parent scene_root, int notes, int sparkles, String quality) {
+        if (!isVisible() || (last_refresh >= 0 && now - last_refresh < REFRESH_INTERVAL)) {
+            return;
+        }
+        long allocated = allocated_bytes();
+        if (last_refresh >= 0 && last_allocated >= 0) {
+            allocation_rate = (allocated - last_allocated) / ((now - last_refresh) / 1e9);
+        }
+        last_refresh = now;
+        last_allocated = allocated;
+        live_notes = notes;
+        live_sparkles = sparkles;
+        this.quality = quality;
+        report.setText(summarize(count_nodes(scene_root)));
+    }
+
+    /** Writes the histograms to "profile-<song>.txt" the first time it's called after something was recorded */
+    public void dump(String song_name) {
+        if (dumped || !recording) {
+            return;
+        }
+        dumped = true;
+        Path path = Path.of("profile-" + song_name.toLowerCase() + ".txt");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path))) {
+            writer.println(summarize(-1));
+            writer.println();
+            writer.println("stage,bucket_upper_ns,count");
+            for (Stage stage : Stage.values()) {
+                Histogram histogram = histograms[stage.ordinal()];
+                for (int bucket = 0; bucket < Histogram.BUCKETS; bucket++) {
+                    if (histogram.get_bucket_count(bucket) > 0) {
+                        writer.printf("%s,%d,%d%n",
+                                stage.name(), Histogram.upper_bound(bucket), histogram.get_bucket_count(bucket));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Couldn't write " + path + ": " + e.getMessage());
+            return;
+        }
+        System.out.println("Profile written to " + path);
+    }
+
+    /** A table of every stage, then the frame and live counts; `nodes` below zero leaves out what only makes sense live */
+    private String summarize(int nodes) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%-15s %9s %9s %9s %9s%n", "stage (ms)", "p50", "p99", "max", "count"));
+        for (Stage stage : Stage.values()) {
+            Histogram histogram = histograms[stage.ordinal()];
+            builder.append(String.format("%-15s %9.3f %9.3f %9.3f %9d%n",
+                    stage,
+                    histogram.get_percentile(0.50) / 1e6,
+                    histogram.get_percentile(0.99) / 1e6,
+                    histogram.get_max() / 1e6,
+                    histogram.get_count()));
+        }
+        double jitter = interval_count > 1 ? Math.sqrt(interval_square_sum / (interval_count - 1)) : 0;
+        builder.append(String.format("Jitter %.3f ms (standard deviation of the frame interval)", jitter / 1e6));
+        if (nodes >= 0) {
+            builder.append(String.format("%nNodes %d, notes %d, sparkle streams %d%nQuality %s%nAllocating %.1f MB/s on the FX thread",
+                    nodes, live_notes, live_sparkles, quality, allocation_rate / 1e6));
+        }
+        return builder.toString();
+    }
+
+    private static int count_nodes(Node node) {
+        int count = 1;
+        if (node instanceof Parent parent) {
+            for (Node child : parent.getChildrenUnmodifiable()) {
+                count += count_nodes(child);
+            }
+        }
+        return count;
+    }
+
+    /** Bytes allocated by this thread so far, or -1 if the JVM can't tell */
+    private static long allocated_bytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads) {
+            return threads.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,157 @@
+import java.util.function.Consumer;
+
+/**
+    A {@code QualityGovernor} trades looks for frame rate. It watches the frame interval against the display's budget (1/60 s unless told otherwise with `--refresh=<hz>`) and steps between quality tiers: fewer streams per sparkle and fewer on screen at once, smaller shadows and then none, and finally notes that appear at full opacity instead of fading in. Whoever made it is told about every change and applies it (see `set_quality` in {@link GameplayManager} and {@link SparkleManager}).
+
+    Frames are judged half a second at a time. A frame counts as dropped when it came more than half an interval late, as in {@link StressTest}. If over a tenth of a window's frames dropped, quality goes down a tier right away. Going back up is slower and only happens after a stretch of windows with no drops at all. That stretch starts at four seconds and doubles every time an upgrade gets undone within it, up to a minute, so a machine that sits right at the edge of a tier settles below it instead of flapping. An upgrade that holds puts the stretch back to four seconds.
+
+    The tier is shown on the F3 overlay, and every change is emitted as a {@link Flight} event with the share of frames that dropped. `--quality=high|medium|low|minimal` pins a tier and turns the governor off.
+
+    The {@code Tier} enum is of the quality levels, best first.
+ */
+public class QualityGovernor {
+    private static long WINDOW = 500_000_000L;
+    private static double DOWNGRADE_FRACTION = 0.1;
+    private static long UPGRADE_WAIT = 4_000_000_000L;
+    private static long MAX_UPGRADE_WAIT = 60_000_000_000L;
+
+    /** The {@code Tier} enum is of the quality levels, best first. */
+    public enum Tier {
+        HIGH("High", 20, 2000, 10.0, true),
+        MEDIUM("Medium", 12, 1000, 5.0, true),
+        LOW("Low", 6, 400, 0.0, true),
+        MINIMAL("Minimal", 3, 150, 0.0, false);
+
+        private String name;
+        private int sparkle_streams;
+        private int stream_cap;
+        private double shadow_radius;
+        private boolean fade_in;
+
+        Tier(String name, int sparkle_streams, int stream_cap, double shadow_radius, boolean fade_in) {
+            this.name = name;
+            this.sparkle_streams = sparkle_streams;
+            this.stream_cap = stream_cap;
+            this.shadow_radius = shadow_radius;
+            this.fade_in = fade_in;
+        }
+
+        // @formatter:off
+        public int get_sparkle_streams() { return sparkle_streams; }
+        public int get_stream_cap() { return stream_cap; }
+        public double get_shadow_radius() { return shadow_radius; }
+        public boolean has_shadows() { return shadow_radius > 0; }
+        public boolean has_fade_in() { return fade_in; }
+        // @formatter:on
+
+        /** The tier called `name` (any case), or null for null or "auto" */
+        public static Tier parse(String name) {
+            if (name == null || name.equalsIgnoreCase("auto")) {
+                return null;
+            }
+            return valueOf(name.toUpperCase());
+        }
+
+        public String toString() {
+            return name;
+        }
+    }
+
+    private long frame_budget;
+    private boolean adaptive;
+    private Tier tier;
+    private Consumer<Tier> on_change = tier -> {
+    };
+    private int changes = 0;
+
+    private long last_frame = -1;
+    private long window_start = -1;
+    private int window_frames = 0;
+    private int window_dropped = 0;
+    private long quiet_since = -1; // Start of the current run of windows without drops
+    private long last_upgrade = -1;
+    private long upgrade_wait = UPGRADE_WAIT;
+
+    /** Governs frames against a refresh rate, starting at a tier; if `tier` is null it starts at the top and adapts */
+    public QualityGovernor(double refresh_hz, Tier tier) {
+        this.frame_budget = (long) (1e9 / refresh_hz);
+        this.adaptive = tier == null;
+        this.tier = tier == null ? Tier.HIGH : tier;
+    }
+
+    // @formatter:off
+    public Tier get_tier() { return tier; }
+    public int get_changes() { return changes; }
+    public boolean is_adaptive() { return adaptive; }
+    public long get_frame_budget() { return frame_budget; }
+    public void set_on_change(Consumer<Tier> on_change) { this.on_change = on_change; }
+    // @formatter:on
+
+    /** Forgets the frame in progress, so a gap (loading, song select) doesn't count as dropped frames */
+    public void pause() {
+        last_frame = -1;
+        window_start = -1;
+        window_frames = 0;
+        window_dropped = 0;
+    }
+
+    /** Counts a frame at the `now` the timer was given, and changes tier if a window just ended that calls for it */
+    public void sample(long now) {
+        if (!adaptive) {
+            return;
+        }
+        if (last_frame >= 0) {
+            window_frames++;
+            if (now - last_frame > frame_budget * 3 / 2) {
+                window_dropped++;
+            }
+        }
+        last_frame = now;
+        if (window_start < 0) {
+            window_start = now;
+            quiet_since = quiet_since < 0 ? now : quiet_since;
+            return;
+        }
+        if (now - window_start < WINDOW) {
+            return;
+        }
+
+        double dropped = (double) window_dropped / Math.max(1, window_frames);
+        if (dropped > DOWNGRADE_FRACTION) {
+            if (last_upgrade >= 0 && now - last_upgrade < upgrade_wait) {
+                upgrade_wait = Math.min(upgrade_wait * 2, MAX_UPGRADE_WAIT); // The last upgrade didn't hold
+            }
+            last_upgrade = -1;
+            quiet_since = now;
+            step(1, dropped);
+        } else if (window_dropped > 0) {
+            quiet_since = now;
+        } else {
+            if (last_upgrade >= 0 && now - last_upgrade >= upgrade_wait) {
+                upgrade_wait = UPGRADE_WAIT;
+                last_upgrade = -1;
+            }
+            if (now - quiet_since >= upgrade_wait && tier.ordinal() > 0) {
+                last_upgrade = now;
+                quiet_since = now;
+                step(-1, dropped);
+            }
+        }
+        window_start = now;
+        window_frames = 0;
+        window_dropped = 0;
+    }
+
+    /** Moves `direction` tiers down (positive) or up (negative), if there is one there */
+    private void step(int direction, double dropped) {
+        int index = tier.ordinal() + direction;
+        if (index < 0 || index >= Tier.values().length) {
+            return;
+        }
+        Tier previous = tier;
+        tier = Tier.values()[index];
+        changes++;
+        Flight.quality(previous.toString(), tier.toString(), dropped);
+        on_change.accept(tier);
+    }
+}
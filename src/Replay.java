@@ -0,0 +1,429 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+    A {@code Replay} is a recording of one play: which song and chart it was, how the game was set up, every keypress that reached a lane with the song time it was judged at, and the score it came to. Playing one back feeds the same keypresses through {@link GameplayManager}'s `strike_note` against the same chart and gets the same score, so suspicious scores can be audited and timing bugs reproduced exactly.
+
+    Usage: `java Replay <replay.yrr> [--fps=<n>]` plays a replay back and compares the score with the recorded one; the exit code is 1 if they differ.
+
+    The format (".yrr") is big-endian: "YRRP", a version byte, the song name (UTF), a hash of the chart's lane letters and spawn times (8 bytes), then varints: audio and visual offset in milliseconds (zigzag), the judgement windows in milliseconds (count first), and the lane letters (count first, each UTF). Then one entry per keypress: lane + 1 and the zigzag difference from the previous press's song time in nanoseconds. A zero ends the presses, followed by the song time the recording stopped at (zigzag) and the score: hits, misses, losses, combo and the count of each judgement.
+
+    Replays come from anywhere, so reading one checks every count against what's left of the file and what the game allows before allocating anything, and takes only plain file names as song names; a bad replay is an IOException, never an out of memory error.
+
+    A {@code Recorder} writes a replay while a game is going. Encoding happens on the caller's thread, into a small buffer; writing to disk happens on a background thread, so the FX thread never waits on the disk. A {@code Recording} is a replay read back in.
+ */
+public class Replay {
+    private static byte[] MAGIC = { 'Y', 'R', 'R', 'P' };
+    private static int VERSION = 1;
+    private static double DEFAULT_FPS = 240.0;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java Replay <replay.yrr> [--fps=<n>]");
+            System.exit(1);
+        }
+        double fps = DEFAULT_FPS;
+        for (String arg : args) {
+            if (arg.startsWith("--fps=")) {
+                fps = Double.parseDouble(arg.substring("--fps=".length()));
+            }
+        }
+
+        Recording recording = Recording.read(Path.of(args[0]));
+        System.out.printf("%s, %d presses, %.1f s%n",
+                recording.get_song(), recording.get_presses().size(), recording.get_end_time() / 1e9);
+        Scoreboard.Snapshot played = play(recording, fps);
+        boolean same = recording.matches(played);
+        System.out.printf("Recorded %s%nPlayed   %s%n%s%n",
+                describe(recording.get_score()), describe(played), same ? "Identical" : "MISMATCH");
+        System.exit(same ? 0 : 1);
+    }
+
+    /** Where a new replay of a song goes */
+    public static Path path_for(String song_name) {
+        String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        return Path.of("../replays/" + song_name.toLowerCase() + "-" + stamp + ".yrr");
+    }
+
+    /** Hash of an engine's lane letters and spawn times, so a replay can't be played against a different chart */
+    public static long hash(Engine engine) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+            for (int lane = 0; lane < engine.get_lane_count(); lane++) {
+                digest.update(engine.get_letters()[lane].getBytes(StandardCharsets.UTF_8));
+                engine.each_time(lane, time -> digest.update(buffer.clear().putLong(time).array()));
+            }
+            return ByteBuffer.wrap(digest.digest()).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e); // Every JVM has SHA-256
+        }
+    }
+
+    /**
+        Plays a recording back through a {@link GameplayManager} that isn't in any window, a frame at a time, and returns the score. Keypresses are struck in the order they were recorded; the last frame lands exactly where the recording stopped. Sets the judgement windows and song name as a side effect.
+     */
+    public static Scoreboard.Snapshot play(Recording recording, double fps) {
+        Mini.Messenger.SONG_NAME = recording.get_song();
+        Engine.Judgement.configure(recording.get_windows());
+        Headless.SimulatedClock clock = new Headless.SimulatedClock();
+        GameplayManager gameplay = new GameplayManager(new SparkleManager(), Mini.RendererType.NODES, clock);
+        Engine engine = gameplay.get_engine();
+        if (hash(engine) != recording.get_chart_hash()) {
+            throw new IllegalStateException("The chart of " + recording.get_song() + " has changed since this was recorded");
+        }
+
+        Headless.Presses presses = recording.get_presses(); // Lanes line up with the engine's, the hash covers the letters
+        long frame = (long) (1e9 / fps);
+        long time = 0;
+        int next = 0;
+        while (time < recording.get_end_time()) {
+            time = Math.min(time + frame, recording.get_end_time());
+            clock.set(time);
+            for (; next < presses.size() && presses.get_time(next) <= time; next++) {
+                gameplay.strike_note(presses.get_lane(next), presses.get_time(next));
+            }
+            gameplay.distribute_timestep();
+        }
+        for (; next < presses.size(); next++) { // Pressed after the last frame, before the recording stopped
+            gameplay.strike_note(presses.get_lane(next), presses.get_time(next));
+        }
+        return engine.get_scoreboard().get_snapshot();
+    }
+
+    /**
+        Re-scores a recording with the {@link Engine} alone, no scene graph involved, against a chart parsed with the recording's letters. Gets the same score as `play`; the engine is ticked at each press instead of every frame, which makes no difference to it. Judgement windows must already be set to the recording's.
+     */
+    public static Scoreboard.Snapshot rescore(Recording recording, ChartLoader.Sheet sheet) {
+        Headless.SimulatedClock clock = new Headless.SimulatedClock();
+        Engine engine = new Engine(sheet, clock);
+        Headless.Presses presses = recording.get_presses();
+        int next = 0;
+        for (; next < presses.size() && presses.get_time(next) <= recording.get_end_time(); next++) {
+            clock.set(presses.get_time(next));
+            engine.tick();
+            engine.strike(presses.get_lane(next), presses.get_time(next));
+        }
+        clock.set(recording.get_end_time());
+        engine.tick();
+        for (; next < presses.size(); next++) { // Pressed after the last frame, before the recording stopped
+            engine.strike(presses.get_lane(next), presses.get_time(next));
+        }
+        return engine.get_scoreboard().get_snapshot();
+    }
+
+    public static String describe(Scoreboard.Snapshot score) {
+        StringBuilder builder = new StringBuilder(String.format("hits %d, misses %d, losses %d, combo %d (",
+                score.get_hits(), score.get_misses(), score.get_losses(), score.get_combo()));
+        for (Engine.Judgement judgement : Engine.Judgement.values()) {
+            builder.append(judgement).append(' ').append(score.get_judgement_count(judgement));
+            builder.append(judgement.ordinal() + 1 < Engine.Judgement.values().length ? ", " : ")");
+        }
+        return builder.toString();
+    }
+
+    /** A {@code Recorder} encodes keypresses as they happen and hands them to a background thread to write. */
+    public static class Recorder {
+        private static int CHUNK_SIZE = 512;
+
+        private ExecutorService writer;
+        private OutputStream output;
+        private String[] letters;
+        private byte[] buffer = new byte[CHUNK_SIZE + 64];
+        private int size = 0;
+        private long last_time = 0;
+        private boolean closed = false;
+
+        /** Starts a replay of the game an engine is running; offsets are those given to the {@link GameClock} */
+        public Recorder(Path path, String song_name, Engine engine, long audio_offset_ms, long visual_offset_ms) {
+            this.letters = engine.get_letters();
+            this.writer = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Replay writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            // Hashing reads every note of the chart, and for a streamed one that means decoding all of it off the mapped file; far too slow for
+            // the FX thread, so the header is put together on the writer thread. Lanes decode with absolute reads of their own, so that is safe mid-game
+            writer.execute(() -> {
+                try {
+                    byte[] header = header(song_name, hash(engine), audio_offset_ms, visual_offset_ms);
+                    Files.createDirectories(path.toAbsolutePath().getParent());
+                    output = new BufferedOutputStream(Files.newOutputStream(path));
+                    output.write(header);
+                } catch (IOException e) {
+                    System.err.println("Couldn't record replay to " + path + ": " + e.getMessage());
+                }
+            });
+        }
+
+        private byte[] header(String song_name, long chart_hash, long audio_offset_ms, long visual_offset_ms) throws IOException {
+            Encoder encoder = new Encoder();
+            encoder.data.write(MAGIC);
+            encoder.data.writeByte(VERSION);
+            encoder.data.writeUTF(song_name);
+            encoder.data.writeLong(chart_hash);
+            encoder.write_signed(audio_offset_ms);
+            encoder.write_signed(visual_offset_ms);
+            Engine.Judgement[] judgements = Engine.Judgement.values();
+            encoder.write_unsigned(judgements.length);
+            for (Engine.Judgement judgement : judgements) {
+                encoder.write_unsigned(judgement.get_window() / 1_000_000L);
+            }
+            encoder.write_unsigned(letters.length);
+            for (String letter : letters) {
+                encoder.data.writeUTF(letter);
+            }
+            return encoder.bytes.toByteArray();
+        }
+
+        /** Records a keypress on a lane, judged at a song time */
+        public void record(int lane, long time) {
+            if (closed) {
+                return;
+            }
+            size = put_unsigned(buffer, size, lane + 1);
+            size = put_unsigned(buffer, size, zigzag(time - last_time));
+            last_time = time;
+            if (size >= CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        /** Ends the replay with the song time it stopped at and the score; returns right away, the write finishes in the background */
+        public void close(long end_time, Scoreboard.Snapshot score) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            flush();
+            Encoder encoder = new Encoder();
+            encoder.write_unsigned(0);
+            encoder.write_signed(end_time);
+            encoder.write_unsigned(score.get_hits());
+            encoder.write_unsigned(score.get_misses());
+            encoder.write_unsigned(score.get_losses());
+            encoder.write_unsigned(score.get_combo());
+            for (Engine.Judgement judgement : Engine.Judgement.values()) {
+                encoder.write_unsigned(score.get_judgement_count(judgement));
+            }
+            byte[] trailer = encoder.bytes.toByteArray();
+            writer.execute(() -> {
+                if (output == null) {
+                    return;
+                }
+                try (OutputStream stream = output) {
+                    stream.write(trailer);
+                } catch (IOException e) {
+                    System.err.println("Couldn't finish replay: " + e.getMessage());
+                }
+            });
+            writer.shutdown();
+        }
+
+        /** Waits for everything given to the writer to be written, e.g. before exiting */
+        public void await(long timeout_ms) {
+            try {
+                writer.awaitTermination(timeout_ms, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void flush() {
+            if (size == 0) {
+                return;
+            }
+            byte[] chunk = Arrays.copyOf(buffer, size);
+            size = 0;
+            writer.execute(() -> {
+                if (output == null) {
+                    return;
+                }
+                try {
+                    output.write(chunk);
+                } catch (IOException e) {
+                    System.err.println("Couldn't write replay: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    /** A {@code Recording} is a replay file read back in. */
+    public static class Recording {
+        private String song;
+        private long chart_hash;
+        private long audio_offset_ms;
+        private long visual_offset_ms;
+        private String windows;
+        private String[] letters;
+        private Headless.Presses presses;
+        private long end_time;
+        private Scoreboard.Snapshot score;
+
+        // @formatter:off
+        public String get_song() { return song; }
+        public long get_chart_hash() { return chart_hash; }
+        public long get_audio_offset_ms() { return audio_offset_ms; }
+        public long get_visual_offset_ms() { return visual_offset_ms; }
+        public String get_windows() { return windows; }
+        public String[] get_letters() { return letters; }
+        public Headless.Presses get_presses() { return presses; }
+        public long get_end_time() { return end_time; }
+        public Scoreboard.Snapshot get_score() { return score; }
+        // @formatter:on
+
+        /** True if a score is the same as the recorded one */
+        public boolean matches(Scoreboard.Snapshot other) {
+            boolean same = score.get_hits() == other.get_hits()
+                    && score.get_misses() == other.get_misses()
+                    && score.get_losses() == other.get_losses()
+                    && score.get_combo() == other.get_combo();
+            for (Engine.Judgement judgement : Engine.Judgement.values()) {
+                same &= score.get_judgement_count(judgement) == other.get_judgement_count(judgement);
+            }
+            return same;
+        }
+
+        public static Recording read(Path path) throws IOException {
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+            try {
+                byte[] magic = new byte[MAGIC.length];
+                data.get(magic);
+                if (!Arrays.equals(magic, MAGIC) || data.get() != VERSION) {
+                    throw new IOException(path + " isn't a version " + VERSION + " replay");
+                }
+
+                Recording recording = new Recording();
+                recording.song = read_string(data);
+                if (!is_file_name(recording.song)) {
+                    throw new IOException(path + " names a song that isn't a chart: " + recording.song);
+                }
+                recording.chart_hash = data.getLong();
+                recording.audio_offset_ms = read_signed(data);
+                recording.visual_offset_ms = read_signed(data);
+                String[] windows = new String[read_count(data, Engine.Judgement.values().length, path, "judgement windows")];
+                for (int i = 0; i < windows.length; i++) {
+                    windows[i] = Long.toString(read_unsigned(data));
+                }
+                recording.windows = String.join(",", windows);
+                recording.letters = new String[read_count(data, Mini.Keys.MAX_LANES, path, "lanes")];
+                for (int i = 0; i < recording.letters.length; i++) {
+                    recording.letters[i] = read_string(data);
+                }
+
+                recording.presses = new Headless.Presses(data.remaining() / 4);
+                long time = 0;
+                for (long lane = read_unsigned(data); lane != 0; lane = read_unsigned(data)) {
+                    if (lane > recording.letters.length) {
+                        throw new IOException(path + " has a press on lane " + (lane - 1) + " of " + recording.letters.length);
+                    }
+                    time += unzigzag(read_unsigned(data));
+                    recording.presses.add(time, (int) lane - 1);
+                }
+                recording.end_time = read_signed(data);
+                int hits = (int) read_unsigned(data);
+                int misses = (int) read_unsigned(data);
+                int losses = (int) read_unsigned(data);
+                int combo = (int) read_unsigned(data);
+                int[] judgements = new int[Engine.Judgement.values().length];
+                for (int i = 0; i < judgements.length; i++) {
+                    judgements[i] = (int) read_unsigned(data);
+                }
+                recording.score = new Scoreboard.Snapshot(0, hits, misses, losses, combo, judgements);
+                return recording;
+            } catch (BufferUnderflowException e) {
+                throw new IOException(path + " is cut short", e);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(path + " is corrupt: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /** Writes varints into a growable buffer, for the parts that aren't written often enough to bother with a fixed one */
+    private static class Encoder {
+        private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private DataOutputStream data = new DataOutputStream(bytes);
+
+        public void write_unsigned(long value) {
+            byte[] scratch = new byte[10];
+            bytes.write(scratch, 0, put_unsigned(scratch, 0, value));
+        }
+
+        public void write_signed(long value) {
+            write_unsigned(zigzag(value));
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /** Writes a varint at an offset and returns the offset after it */
+    private static int put_unsigned(byte[] buffer, int offset, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+
+    /** Reads a count and checks it against a limit and what's left of the data (every entry takes at least a byte) */
+    private static int read_count(ByteBuffer data, int limit, Path path, String what) throws IOException {
+        long count = read_unsigned(data);
+        if (count > limit || count > data.remaining()) {
+            throw new IOException(path + " claims " + Long.toUnsignedString(count) + " " + what + ", at most " + limit + " are allowed");
+        }
+        return (int) count;
+    }
+
+    /** True for a name with no directories in it, which is all a song name should be */
+    private static boolean is_file_name(String name) {
+        return !name.isEmpty() && !name.equals(".") && !name.equals("..")
+                && name.indexOf('/') < 0 && name.indexOf('\\') < 0 && name.indexOf(':') < 0 && name.indexOf('\0') < 0;
+    }
+
+    private static long read_unsigned(ByteBuffer data) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int next = data.get() & 0xFF;
+            value |= (long) (next & 0x7F) << shift;
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("A varint runs past 64 bits");
+    }
+
+    private static long read_signed(ByteBuffer data) {
+        return unzigzag(read_unsigned(data));
+    }
+
+    /** Reads a string written by DataOutputStream.writeUTF; song names and letters don't need the modified bits */
+    private static String read_string(ByteBuffer data) {
+        byte[] bytes = new byte[data.getShort() & 0xFFFF];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,147 @@
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+    A {@code Scoreboard} is how the score gets from whoever judges keypresses to whoever shows it, which need not be the same thread. The {@link Engine} publishes every outcome (a judgement, a press on thin air, or a lost note) to it. Each outcome goes into a bounded ring of events, and the running totals are updated in one atomic step, so readers on any thread get a {@code Snapshot} in which the totals agree with each other instead of racing individual counters.
+
+    Nothing here takes a lock. Publishers claim a slot by incrementing a counter and write the event into it; a slot's sequence number says which event it holds and whether that event is finished. The ring is lossy: if a {@code Reader} falls a whole ring behind, it skips ahead to the oldest event still there and counts what it missed. The totals are never lossy.
+
+    A {@code Snapshot} is the totals after some number of events. A {@code Reader} walks the events in order, at its own pace.
+ */
+public class Scoreboard {
+    private static int CAPACITY = 1024; // Power of two
+    private static int MASK = CAPACITY - 1;
+    public static int THIN_AIR = -1; // Outcome of a press with no note near it
+    public static int LOST = -2; // Outcome of a note nobody pressed in time
+
+    /** A {@code Snapshot} is the totals after `events` outcomes; it never changes once made. */
+    public static class Snapshot {
+        private long events;
+        private int hits;
+        private int misses;
+        private int losses;
+        private int combo;
+        private int[] judgements;
+
+        public Snapshot(long events, int hits, int misses, int losses, int combo, int[] judgements) {
+            this.events = events;
+            this.hits = hits;
+            this.misses = misses;
+            this.losses = losses;
+            this.combo = combo;
+            this.judgements = judgements;
+        }
+
+        // @formatter:off
+        public long get_events() { return events; }
+        public int get_hits() { return hits; }
+        public int get_misses() { return misses; }
+        public int get_losses() { return losses; }
+        public int get_combo() { return combo; }
+        public int get_judgement_count(Engine.Judgement judgement) { return judgements[judgement.ordinal()]; }
+        // @formatter:on
+
+        /** The totals after one more outcome */
+        private Snapshot after(int outcome) {
+            if (outcome == THIN_AIR) {
+                return new Snapshot(events + 1, hits, misses + 1, losses, combo, judgements);
+            }
+            if (outcome == LOST) {
+                return new Snapshot(events + 1, hits, misses, losses + 1, 0, judgements);
+            }
+            int[] counts = judgements.clone();
+            counts[outcome]++;
+            if (outcome == Engine.Judgement.MISS.ordinal()) {
+                return new Snapshot(events + 1, hits, misses, losses + 1, 0, counts);
+            }
+            return new Snapshot(events + 1, hits + 1, misses, losses, combo + 1, counts);
+        }
+    }
+
+    private AtomicReference<Snapshot> totals = new AtomicReference<>(
+            new Snapshot(0, 0, 0, 0, 0, new int[Engine.Judgement.values().length]));
+
+    // The ring. A slot's sequence is 2 * event + 1 while the event is being written and 2 * event + 2 once it's done
+    private AtomicLong claimed = new AtomicLong(0);
+    private AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private int[] outcomes = new int[CAPACITY];
+    private int[] lanes = new int[CAPACITY];
+    private long[] errors = new long[CAPACITY];
+    private long[] times = new long[CAPACITY];
+
+    // @formatter:off
+    public Snapshot get_snapshot() { return totals.get(); }
+    public long get_published() { return claimed.get(); }
+    public Reader reader() { return new Reader(); }
+    // @formatter:on
+
+    /**
+        Publishes an outcome: a {@link Engine.Judgement} ordinal, THIN_AIR or LOST. `error` is the signed timing error of a judged press (zero otherwise) and `time` the song time it happened at. Safe to call from any thread.
+     */
+    public void publish(int outcome, int lane, long error, long time) {
+        long event = claimed.getAndIncrement();
+        int slot = (int) (event & MASK);
+        sequences.set(slot, 2 * event + 1);
+        VarHandle.storeStoreFence(); // Readers must see the slot as busy before any of the new fields
+        outcomes[slot] = outcome;
+        lanes[slot] = lane;
+        errors[slot] = error;
+        times[slot] = time;
+        sequences.setRelease(slot, 2 * event + 2);
+
+        Snapshot before;
+        do {
+            before = totals.get();
+        } while (!totals.compareAndSet(before, before.after(outcome)));
+    }
+
+    /** A {@code Reader} reads the events of a scoreboard in order, starting from the oldest one still in the ring. */
+    public class Reader {
+        private long next = Math.max(0, claimed.get() - CAPACITY);
+        private long dropped = 0;
+        private int outcome;
+        private int lane;
+        private long error;
+        private long time;
+
+        // @formatter:off
+        public long get_dropped() { return dropped; }
+        public int get_outcome() { return outcome; }
+        public int get_lane() { return lane; }
+        public long get_error() { return error; }
+        public long get_time() { return time; }
+        // @formatter:on
+
+        /** Moves on to the next event and returns true, or returns false if there isn't a finished one yet */
+        public boolean advance() {
+            while (true) {
+                int slot = (int) (next & MASK);
+                long sequence = sequences.getAcquire(slot);
+                if (sequence < 2 * next + 2) {
+                    return false; // Not published yet, or still being written
+                }
+                if (sequence == 2 * next + 2) {
+                    int read_outcome = outcomes[slot];
+                    int read_lane = lanes[slot];
+                    long read_error = errors[slot];
+                    long read_time = times[slot];
+                    VarHandle.loadLoadFence(); // Finish reading the fields before checking they weren't overwritten
+                    if (sequences.get(slot) == sequence) {
+                        outcome = read_outcome;
+                        lane = read_lane;
+                        error = read_error;
+                        time = read_time;
+                        next++;
+                        return true;
+                    }
+                }
+                // Lapped by publishers; skip to the oldest event that could still be there
+                long oldest = Math.max(next + 1, claimed.get() - CAPACITY + 1);
+                dropped += oldest - next;
+                next = oldest;
+            }
+        }
+    }
+}
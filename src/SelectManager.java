@@ -0,0 +1,117 @@
+import java.util.ArrayList;
+import java.util.function.Consumer;
+import javafx.application.Platform;
+import javafx.geometry.Pos;
+import javafx.scene.input.KeyCode;
+import javafx.scene.layout.Background;
+import javafx.scene.layout.VBox;
+
+/**
+    A {@code SelectManager} is the song select screen: every song in the {@link Library}, one per line, with the selected one highlighted. Up and down move the selection (and prefetch the songs around it), enter plays it. Once the song is loaded, which is usually immediately, it is handed to whoever made the screen.
+
+    The bottom line shows how well the library's cache is doing: hits out of requests, and the mean and worst load time. It is kept up to date through the library's {@link Library.Metrics} hook.
+ */
+public class SelectManager extends VBox {
+    private static double TITLE_FONT_SIZE = 40.0;
+    private static double SONG_FONT_SIZE = 24.0;
+    private static double STATUS_FONT_SIZE = 14.0;
+    private static double SPACING = 12.0;
+
+    private Library library;
+    private Consumer<Library.Entry> on_chosen;
+    private ArrayList<Mini.Text> lines;
+    private Mini.Text status;
+    private int selected = 0;
+    private Library.Song loading; // Chosen but not loaded yet, or null
+
+    public SelectManager(Library library, Consumer<Library.Entry> on_chosen) {
+        this.library = library;
+        this.on_chosen = on_chosen;
+        setAlignment(Pos.CENTER);
+        setSpacing(SPACING);
+        setBackground(Background.fill(Nord.NIGHT_DARK));
+
+        getChildren().addAll(new Mini.Text("Select a song\n", TITLE_FONT_SIZE));
+        lines = new ArrayList<>();
+        for (Library.Song song : library.get_songs()) {
+            lines.add(new Mini.Text(song.get_title() + " - " + song.get_artist(), SONG_FONT_SIZE));
+            getChildren().add(lines.getLast());
+        }
+        if (lines.isEmpty()) {
+            getChildren().add(new Mini.Text("No charts in the assets directory", SONG_FONT_SIZE));
+        }
+        status = new Mini.Text("", STATUS_FONT_SIZE);
+        status.setFill(Nord.SNOW_DARK);
+        getChildren().addAll(new Mini.Spacer(0.0, SPACING), status);
+
+        library.set_metrics(new Library.Metrics() {
+            public void requested(Library.Song song, boolean hit) {
+                Platform.runLater(SelectManager.this::refresh);
+            }
+
+            public void loaded(Library.Song song, long load_time, boolean prefetched) {
+                Platform.runLater(SelectManager.this::refresh);
+            }
+        });
+        move(0);
+    }
+
+    // @formatter:off
+    public Library.Song get_selected() { return lines.isEmpty() ? null : library.get_songs().get(selected); }
+    // @formatter:on
+
+    /** Up and down move, enter plays; anything else is ignored */
+    public void press(KeyCode code) {
+        switch (code) {
+            case UP -> move(-1);
+            case DOWN -> move(1);
+            case ENTER -> choose();
+            default -> {
+            }
+        }
+    }
+
+    /** Moves the selection by `delta` lines, staying in the list */
+    public void move(int delta) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        selected = Math.clamp(selected + delta, 0, lines.size() - 1);
+        for (int i = 0; i < lines.size(); i++) {
+            lines.get(i).setFill(i == selected ? Nord.AURORA_YELLOW : Nord.SNOW_LIGHT);
+        }
+        library.prefetch(selected);
+        refresh();
+    }
+
+    /** Loads the selected song, if nothing is loading already, and hands it on once it's ready */
+    public void choose() {
+        if (lines.isEmpty() || loading != null) {
+            return;
+        }
+        loading = get_selected();
+        refresh();
+        library.request(loading).whenComplete((entry, error) -> Platform.runLater(() -> {
+            Library.Song song = loading;
+            loading = null;
+            if (error != null) {
+                Throwable cause = error.getCause() == null ? error : error.getCause(); // Unwrap the CompletionException
+                status.setText("Couldn't load " + song.get_title() + ": " + cause.getMessage());
+                return;
+            }
+            refresh();
+            on_chosen.accept(entry);
+        }));
+    }
+
+    /** Rewrites the status line from the library's totals */
+    public void refresh() {
+        String cache = String.format("Cache %d/%d hits (%.0f%%), load %.1f ms mean, %.1f ms max",
+                library.get_hits(),
+                library.get_requests(),
+                library.get_hit_rate() * 100,
+                library.get_mean_load_time() / 1e6,
+                library.get_max_load_time() / 1e6);
+        status.setText(loading == null ? cache : "Loading " + loading.get_title() + "...\n" + cache);
+    }
+}
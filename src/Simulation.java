@@ -0,0 +1,261 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+    A {@code Simulation} runs the {@link Engine} on a thread of its own, a step every millisecond, so spawning, judging and losing notes carry on at the same rate whatever the FX thread is doing (laying out, compositing sparkles, or stalling on a slow frame). Each step samples the {@link GameClock}, judges the keypresses that came in since the last one, carries out any seek or change of rate that was asked for (see {@link Practice}), ticks the engine, and publishes a {@code Frame} of what there is to draw. The animation timer only picks up the latest frame and draws it.
+
+    Nothing is shared under a lock. Keypresses are handed over through a ring that the FX thread writes and the simulation thread reads, stamped with the System.nanoTime() they arrived at; they are turned into song time on the simulation thread, which sampled the clock at most a step ago. Frames are triple buffered: the simulation fills one, swaps it with the ready one in a single atomic step, and the reader swaps the ready one for the one it had, so neither side ever waits for the other or sees a frame being written. No frame is allocated after the first three.
+
+    The thread asks for the highest priority, which only means something to the OS if the JVM is allowed to pass it on (on Linux, `-XX:ThreadPriorityPolicy=1` as root). If a step runs long, the next one starts straight away rather than trying to catch up; every step reads the clock, so a missed step costs nothing but latency, and it's counted as an overrun.
+
+    Replays, {@link Headless} and the benchmarks don't use any of this; they tick the engine on their own thread, as fast as they like, which gets the same results.
+
+    A {@code Listener} hears about the simulation from its thread: before every step (which is when autoplay presses keys), after every judged press, and when the last note is gone. A {@code Frame} is the engine as it was after a step; it stays put until the reader asks for the next one.
+ */
+public class Simulation {
+    private static long STEP = 1_000_000L; // 1 kHz
+    private static int QUEUE_SIZE = 256; // Power of two
+    private static long NO_REQUEST = Long.MIN_VALUE;
+
+    /** A {@code Listener} is told what the simulation is doing, on the simulation thread. */
+    public interface Listener {
+        /** Before a step ticks the engine to `song_time`; presses may be made here with `strike` */
+        default void stepping(Simulation simulation, long song_time) {
+        }
+
+        /** After a press on a lane at a song time has been judged; the judgement is null for thin air */
+        default void struck(int lane, long time, Engine.Judgement judgement) {
+        }
+
+        /** Once, when every note has been pressed or lost */
+        default void finished(long song_time) {
+        }
+    }
+
+    private Engine engine;
+    private GameClock clock;
+    private Listener listener;
+    private Thread thread; // Null until started
+    private volatile boolean running = false;
+    private volatile Throwable failure;
+    private boolean finished = false;
+
+    // Keypresses, written by one thread and read by the simulation
+    private int[] press_lanes = new int[QUEUE_SIZE];
+    private long[] press_times = new long[QUEUE_SIZE];
+    private AtomicLong queued = new AtomicLong(0);
+    private AtomicLong taken = new AtomicLong(0);
+
+    // A seek (song time) and a rate (double bits) for the next step, from any thread; only the latest of each counts
+    private AtomicLong requested_seek = new AtomicLong(NO_REQUEST);
+    private AtomicLong requested_rate = new AtomicLong(NO_REQUEST);
+
+    // Triple buffer: the simulation owns `writing`, the reader owns `reading`, and `ready` is up for grabs
+    private Frame writing;
+    private AtomicReference<Frame> ready;
+    private Frame reading;
+
+    private volatile long steps = 0;
+    private volatile long overruns = 0;
+    private volatile long dropped_presses = 0;
+
+    public Simulation(Engine engine, GameClock clock, Listener listener) {
+        this.engine = engine;
+        this.clock = clock;
+        this.listener = listener == null ? new Listener() {
+        } : listener;
+        this.writing = new Frame(engine.get_lane_count());
+        this.ready = new AtomicReference<>(new Frame(engine.get_lane_count()));
+        this.reading = new Frame(engine.get_lane_count());
+    }
+
+    // @formatter:off
+    public long get_steps() { return steps; }
+    public long get_overruns() { return overruns; }
+    public long get_dropped_presses() { return dropped_presses; }
+    // @formatter:on
+
+    public void start() {
+        running = true;
+        thread = Thread.ofPlatform()
+                .name("Simulation")
+                .priority(Thread.MAX_PRIORITY)
+                .daemon(true)
+                .start(this::run);
+    }
+
+    /** Stops stepping and waits for the thread, after which the engine is safe to read from the calling thread */
+    public void stop() {
+        running = false;
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+        Queues a keypress on a lane, stamped with the System.nanoTime() it arrived at, for the next step to judge. Only one thread may press (the FX thread); returns false if the queue is full, which only happens if the simulation has stopped keeping up.
+     */
+    public boolean press(int lane, long system_time) {
+        long index = queued.get();
+        if (index - taken.get() == QUEUE_SIZE) {
+            dropped_presses++;
+            return false;
+        }
+        int slot = (int) (index & (QUEUE_SIZE - 1));
+        press_lanes[slot] = lane;
+        press_times[slot] = system_time;
+        queued.setRelease(index + 1);
+        return true;
+    }
+
+    /** Has the next step jump to a song time; from any thread */
+    public void request_seek(long song_time) {
+        requested_seek.set(song_time);
+    }
+
+    /** Has the next step run the clock at a playback rate; from any thread */
+    public void request_rate(double rate) {
+        requested_rate.set(Double.doubleToRawLongBits(rate));
+    }
+
+    /** Jumps the clock and the engine to a song time right away; only from the simulation thread, i.e. a {@code Listener} */
+    public void seek(long song_time) {
+        clock.seek(song_time, System.nanoTime());
+        engine.seek();
+    }
+
+    /** Judges a press on a lane at a song time right away; only from the simulation thread, i.e. a {@code Listener} */
+    public Engine.Judgement strike(int lane, long time) {
+        Engine.Judgement judgement = engine.strike(lane, time);
+        listener.struck(lane, time, judgement);
+        return judgement;
+    }
+
+    /** The latest frame; it is the reader's until the next call, so only one thread may call this, once per frame */
+    public Frame get_frame() {
+        if (failure != null) {
+            throw new IllegalStateException("The simulation stopped", failure);
+        }
+        if (ready.get().fresh) {
+            reading.fresh = false;
+            reading = ready.getAndSet(reading);
+        }
+        return reading;
+    }
+
+    /** Steps until stopped; if a step throws, the next `get_frame` rethrows it on the reader's thread */
+    private void run() {
+        long next = System.nanoTime();
+        try {
+            while (running) {
+                step(System.nanoTime());
+                steps++;
+                next += STEP;
+                long now = System.nanoTime();
+                if (now - next > STEP) {
+                    overruns++;
+                    next = now; // Fell behind; don't catch up, the clock says where we are
+                } else {
+                    LockSupport.parkNanos(next - now);
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            failure = e;
+        }
+    }
+
+    private void step(long now) {
+        clock.sample(now);
+        long index = taken.get();
+        long end = queued.getAcquire();
+        for (; index < end; index++) {
+            int slot = (int) (index & (QUEUE_SIZE - 1));
+            strike(press_lanes[slot], clock.to_song_time(press_times[slot]));
+        }
+        taken.setRelease(end);
+
+        long rate = requested_rate.getAndSet(NO_REQUEST);
+        if (rate != NO_REQUEST) {
+            clock.set_rate(Double.longBitsToDouble(rate), now);
+        }
+        long seek = requested_seek.getAndSet(NO_REQUEST);
+        if (seek != NO_REQUEST) {
+            seek(seek);
+        }
+
+        listener.stepping(this, clock.get_song_time());
+        engine.tick();
+        if (!finished && engine.is_finished()) {
+            finished = true;
+            listener.finished(engine.get_song_time());
+        }
+
+        writing.capture(engine);
+        writing.fresh = true;
+        writing = ready.getAndSet(writing);
+    }
+
+    /**
+        A {@code Frame} is what the engine looked like after a step: the times, how many notes of each lane have spawned, and which are resolved. Notes before a lane's first live note are all resolved; after it, only the few that were struck out of order are, and those are listed.
+     */
+    public static class Frame implements EngineState {
+        private long song_time;
+        private long visual_time;
+        private boolean is_finished;
+        private int seeks;
+        private int[] spawned;
+        private int[] first_live;
+        private int[][] struck; // Per lane, resolved notes at or after the first live one, in order
+        private int[] struck_count;
+        private boolean fresh = false;
+
+        private Frame(int lane_count) {
+            this.spawned = new int[lane_count];
+            this.first_live = new int[lane_count];
+            this.struck = new int[lane_count][16];
+            this.struck_count = new int[lane_count];
+        }
+
+        // @formatter:off
+        public long get_song_time() { return song_time; }
+        public long get_visual_time() { return visual_time; }
+        public boolean is_finished() { return is_finished; }
+        public int get_spawned(int lane) { return spawned[lane]; }
+        public int get_first_live(int lane) { return first_live[lane]; }
+        public int get_seeks() { return seeks; }
+        // @formatter:on
+
+        public boolean is_resolved(int lane, int index) {
+            return index < first_live[lane] || Arrays.binarySearch(struck[lane], 0, struck_count[lane], index) >= 0;
+        }
+
+        /** Copies the engine's state in; only the simulation thread, between ticks */
+        private void capture(Engine engine) {
+            song_time = engine.get_song_time();
+            visual_time = engine.get_visual_time();
+            is_finished = engine.is_finished();
+            seeks = engine.get_seeks();
+            for (int lane = 0; lane < spawned.length; lane++) {
+                spawned[lane] = engine.get_spawned(lane);
+                first_live[lane] = engine.get_first_live(lane);
+                int count = 0;
+                for (int index = engine.next_resolved(lane, first_live[lane]);
+                        index >= 0 && index < spawned[lane];
+                        index = engine.next_resolved(lane, index + 1)) {
+                    if (count == struck[lane].length) {
+                        struck[lane] = Arrays.copyOf(struck[lane], count * 2);
+                    }
+                    struck[lane][count++] = index;
+                }
+                struck_count[lane] = count;
+            }
+        }
+    }
+}
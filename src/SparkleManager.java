@@ -0,0 +1,201 @@
+import java.util.Random;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.StrokeLineCap;
+
+/**
+    <p>A {@code SparkleManager} draws every sparkle in the game onto one canvas. A sparkle is a multicolored animated burst composed of streams that originate at its center. A stream is defined as a curve connecting a set of points. Each timestep, points move in space and streams fade. Sparkles are used as decoration e.g., when a note is hit.
+
+    Sparkles used to be their own Groups, each with its own AnimationTimer that was never stopped, so long sessions piled up thousands of timers ticking over empty Groups. Now `distribute_timestep` is called by the timer in "Yuri.java" like every other Manager, and the streams and points live in flat arrays of primitives (one slot per stream, four per point set) instead of nodes. There is a hard cap on streams; when it is reached the oldest streams are evicted first. A stream's slot is free again as soon as it has faded.</p>
+
+    How many streams a sparkle has and how many can be on screen at once come from the {@link QualityGovernor}'s tier. Lowering the cap doesn't cut streams short; those past it just fade out as usual and their slots aren't handed out again.
+ */
+public class SparkleManager extends Pane {
+    private Random random = new Random();
+
+    // Constants
+    private static int NUM_STREAMS = 20;
+    private static int MAX_STREAMS = 2000;
+    private static int POINTS_PER_STREAM = 4; // Cubic curves have 4 points
+    private static double STROKE_WIDTH = 3;
+    private static double OVERALL_DELAY = 0.1;
+
+    // Streams, indexed by slot
+    private boolean[] live = new boolean[MAX_STREAMS];
+    private double[] center_x = new double[MAX_STREAMS];
+    private double[] center_y = new double[MAX_STREAMS];
+    private double[] opacity = new double[MAX_STREAMS];
+    private double[] fade_rate = new double[MAX_STREAMS];
+    private Color[] color = new Color[MAX_STREAMS];
+
+    // Points, indexed by slot * POINTS_PER_STREAM + point
+    private double[] delay_seconds = new double[MAX_STREAMS * POINTS_PER_STREAM];
+    private double[] magnitude = new double[MAX_STREAMS * POINTS_PER_STREAM];
+    private double[] direction = new double[MAX_STREAMS * POINTS_PER_STREAM];
+    private double[] drag_rate = new double[MAX_STREAMS * POINTS_PER_STREAM];
+    private double[] velocity = new double[MAX_STREAMS * POINTS_PER_STREAM];
+    private double[] magnitude_jitter = new double[MAX_STREAMS * POINTS_PER_STREAM];
+    private double[] direction_jitter = new double[MAX_STREAMS * POINTS_PER_STREAM];
+
+    // Variables
+    private Canvas canvas;
+    private int num_streams = NUM_STREAMS;
+    private int stream_cap = MAX_STREAMS;
+    private int next_slot = 0; // Slots are handed out in order, so this is also the oldest one
+    private int live_count = 0;
+    private long evictions = 0;
+    private long last_update = -1;
+
+    public SparkleManager() {
+        setMouseTransparent(true);
+        canvas = new Canvas();
+        canvas.widthProperty().bind(widthProperty());
+        canvas.heightProperty().bind(heightProperty());
+        getChildren().add(canvas);
+    }
+
+    // @formatter:off
+    public int get_live_count() { return live_count; }
+    public long get_evictions() { return evictions; }
+    // @formatter:on
+
+    /** Takes the streams per sparkle and the cap on streams from a quality tier */
+    public void set_quality(QualityGovernor.Tier tier) {
+        num_streams = tier.get_sparkle_streams();
+        stream_cap = Math.min(tier.get_stream_cap(), MAX_STREAMS);
+        next_slot %= stream_cap;
+    }
+
+    /** Adds a sparkle at the specific location (in this manager's coordinates) */
+    public void add_sparkle(double x, double y, Color[] colors) {
+        long evictions_before = evictions;
+        for (int i = 0; i < num_streams; i++) {
+            add_stream(x, y, colors[random.nextInt(colors.length)]);
+        }
+        Flight.sparkle(num_streams, num_streams * POINTS_PER_STREAM, (int) (evictions - evictions_before));
+    }
+
+    private void add_stream(double x, double y, Color stream_color) {
+        int slot = next_slot;
+        next_slot = (next_slot + 1) % stream_cap;
+        if (live[slot]) {
+            evictions++;
+        } else {
+            live_count++;
+        }
+
+        live[slot] = true;
+        center_x[slot] = x;
+        center_y[slot] = y;
+        opacity[slot] = 1;
+        fade_rate[slot] = generate_fade_rate();
+        color[slot] = stream_color;
+
+        double stream_direction = random.nextDouble(2 * Math.PI);
+        for (int j = 0; j < POINTS_PER_STREAM; j++) {
+            int point = slot * POINTS_PER_STREAM + j;
+            // Integer division is intended; only the head of the stream waits
+            delay_seconds[point] = OVERALL_DELAY * ((POINTS_PER_STREAM - 1 - j) / (POINTS_PER_STREAM - 1));
+            magnitude[point] = 0;
+            direction[point] = stream_direction;
+            drag_rate[point] = random.nextGaussian(5, 0.5);
+            velocity[point] = random.nextGaussian(2, 0.5);
+            magnitude_jitter[point] = random.nextGaussian(0, 0.5);
+            direction_jitter[point] = random.nextGaussian(0, 0.01);
+        }
+    }
+
+    private double generate_fade_rate() {
+        // We require fade rate to have some minimum value because if a
+        // stream stays on screen for too long, it drifts further than it
+        // should and looks a little weird
+        double minimum = 1.0;
+        double offer = 0.0;
+        while (offer < minimum) {
+            offer = Math.abs(random.nextGaussian(2, 0.4));
+        }
+        return offer;
+    }
+
+    /** Moves points, fades streams, reclaims faded ones and redraws */
+    public void distribute_timestep(long now) {
+        double elapsed_seconds = last_update < 0 ? 0 : (now - last_update) / 1e9;
+        last_update = now;
+        if (live_count == 0) {
+            return;
+        }
+        step(elapsed_seconds);
+        draw();
+    }
+
+    /** Moves points and fades streams by a timestep, freeing the slots of streams that have faded */
+    public void step(double elapsed_seconds) {
+        for (int slot = 0; slot < MAX_STREAMS && live_count > 0; slot++) {
+            if (!live[slot]) {
+                continue;
+            }
+            step_points(slot, elapsed_seconds);
+            opacity[slot] -= elapsed_seconds * fade_rate[slot];
+            if (opacity[slot] <= 0) {
+                live[slot] = false;
+                color[slot] = null;
+                live_count--;
+            }
+        }
+    }
+
+    /** Clears the canvas and draws every live stream */
+    private void draw() {
+        GraphicsContext context = canvas.getGraphicsContext2D();
+        context.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        context.setLineWidth(STROKE_WIDTH);
+        context.setLineCap(StrokeLineCap.ROUND);
+        for (int slot = 0; slot < MAX_STREAMS; slot++) {
+            if (live[slot]) {
+                draw_stream(context, slot);
+            }
+        }
+        context.setGlobalAlpha(1.0);
+    }
+
+    private void step_points(int slot, double elapsed_seconds) {
+        int end = (slot + 1) * POINTS_PER_STREAM;
+        for (int point = slot * POINTS_PER_STREAM; point < end; point++) {
+            if (delay_seconds[point] >= 0) {
+                delay_seconds[point] -= elapsed_seconds;
+            } else {
+                velocity[point] -= drag_rate[point] * elapsed_seconds;
+                velocity[point] = (velocity[point] <= 0) ? 0 : velocity[point];
+                magnitude[point] += velocity[point];
+                magnitude[point] += magnitude_jitter[point];
+                direction[point] += direction_jitter[point];
+            }
+        }
+    }
+
+    private void draw_stream(GraphicsContext context, int slot) {
+        int first = slot * POINTS_PER_STREAM;
+        context.setGlobalAlpha(opacity[slot]);
+        context.setStroke(color[slot]);
+        context.beginPath();
+        context.moveTo(x_of(slot, first), y_of(slot, first));
+        context.bezierCurveTo(
+                x_of(slot, first + 1),
+                y_of(slot, first + 1),
+                x_of(slot, first + 2),
+                y_of(slot, first + 2),
+                x_of(slot, first + 3),
+                y_of(slot, first + 3));
+        context.stroke();
+    }
+
+    private double x_of(int slot, int point) {
+        return center_x[slot] + magnitude[point] * Math.cos(direction[point]);
+    }
+
+    private double y_of(int slot, int point) {
+        return center_y[slot] + magnitude[point] * Math.sin(direction[point]);
+    }
+}
@@ -0,0 +1,165 @@
+import java.util.Arrays;
+
+/**
+    A {@code StressTest} plays a generated chart (see {@link ChartGenerator}) in the real game with autoplay and reports, once a second, how the game is coping: note density, frames and dropped frames, how late notes spawned, how many notes are live, and how much heap is in use. With a fill that ramps up, the line where frames start dropping is the density at which {@link NoteManager} and the renderer stop keeping up; it is printed again at the end.
+
+    Start the game with `--stress`, plus any of the {@link ChartGenerator} options (`--lanes`, `--bpm`, `--beats`, `--fill`, `--seed`), e.g. `--stress --lanes=7 --bpm=3000 --fill=0.02,1`. The fill ramps from 5% to 100% by default.
+
+    Autoplay presses keys from the {@link Simulation} thread, as a {@code Listener}, so that however badly the frames go, the notes are hit on time; everything else is measured on the FX thread from the frames it draws. A frame counts as dropped when it came more than half an interval late; JavaFX pulses at 60 Hz, so every whole 1/60 s past the first is one dropped frame. Spawn lateness is how far the visual time had got past a note's spawn time when it was first drawn, so it's the simulation's lateness plus the renderer's. The heap floor is the lowest heap use seen in a second; if it keeps climbing, something is holding on to notes. The summary also says how many simulation steps ran long.
+ */
+public class StressTest implements Simulation.Listener {
+    private static long FRAME_INTERVAL = 1_000_000_000L / 60;
+    private static long REPORT_INTERVAL = 1_000_000_000L;
+
+    private GameplayManager gameplay;
+    private Engine engine;
+    private String[] letters;
+    private int[] next_press; // Per lane, the next note autoplay will press
+    private int[] seen; // Per lane, notes whose spawn has been measured
+
+    private Histogram lateness = new Histogram();
+    private Histogram window_lateness = new Histogram();
+    private long last_frame = -1;
+    private long last_report = -1;
+    private long frames = 0;
+    private long dropped = 0;
+    private long window_frames = 0;
+    private long window_dropped = 0;
+    private long window_spawns = 0;
+    private long window_start_time = 0;
+    private long heap_start = -1;
+    private long heap_floor = Long.MAX_VALUE;
+    private int most_live = 0;
+    private double first_dropping_density = -1;
+    private boolean finished = false;
+
+    public StressTest(GameplayManager gameplay) {
+        this.gameplay = gameplay;
+        this.engine = gameplay.get_engine();
+        this.letters = engine.get_letters();
+        this.next_press = new int[letters.length];
+        this.seen = new int[letters.length];
+    }
+
+    // @formatter:off
+    public long get_frames() { return frames; }
+    public long get_dropped() { return dropped; }
+    // @formatter:on
+
+    /** A stress chart from the command line's {@link ChartGenerator} options, on the usual layout for its lanes */
+    public static ChartLoader.Sheet generate(String[] args) {
+        boolean has_fill = false;
+        for (String arg : args) {
+            has_fill |= arg.startsWith("--fill=");
+        }
+        String[] options = has_fill ? args : append(args, "--fill=0.05,1");
+        ChartGenerator generator = ChartGenerator.from_options(options);
+        return generator.to_sheet(Mini.Keys.layout(generator.get_lane_count()));
+    }
+
+    /** Autoplay: presses every note whose time has come, exactly on time */
+    @Override
+    public void stepping(Simulation simulation, long song_time) {
+        long travel_time = Engine.get_travel_time();
+        for (int lane = 0; lane < letters.length; lane++) {
+            int count = engine.get_note_count(lane);
+            while (next_press[lane] < count && engine.get_time(lane, next_press[lane]) + travel_time <= song_time) {
+                simulation.strike(lane, engine.get_time(lane, next_press[lane]) + travel_time);
+                next_press[lane]++;
+            }
+        }
+    }
+
+    /** Measures a frame at the `now` the timer was given; call after everything else in it */
+    public void sample(long now) {
+        EngineState state = gameplay.get_state();
+        long heap = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+        if (heap_start < 0) {
+            heap_start = heap;
+        }
+        heap_floor = Math.min(heap_floor, heap);
+        if (last_frame >= 0) {
+            long interval = now - last_frame;
+            frames++;
+            window_frames++;
+            if (interval > FRAME_INTERVAL * 3 / 2) {
+                long missed = Math.round((double) interval / FRAME_INTERVAL) - 1;
+                dropped += missed;
+                window_dropped += missed;
+            }
+        }
+        last_frame = now;
+        most_live = Math.max(most_live, gameplay.get_live_note_count());
+
+        long visual_time = state.get_visual_time();
+        for (int lane = 0; lane < letters.length; lane++) {
+            int spawned = state.get_spawned(lane);
+            for (; seen[lane] < spawned; seen[lane]++) {
+                long late = visual_time - engine.get_time(lane, seen[lane]);
+                lateness.record(late);
+                window_lateness.record(late);
+                window_spawns++;
+            }
+        }
+
+        if (last_report < 0) {
+            last_report = now;
+            window_start_time = state.get_song_time();
+        } else if (now - last_report >= REPORT_INTERVAL) {
+            report(now, heap, state.get_song_time());
+        }
+        if (state.is_finished() && !finished) {
+            finished = true;
+            summarize();
+        }
+    }
+
+    /** One line for the second just gone */
+    private void report(long now, long heap, long song_time) {
+        double song_seconds = Math.max(1, song_time - window_start_time) / 1e9;
+        double density = window_spawns / song_seconds;
+        if (window_dropped > 0 && first_dropping_density < 0 && window_spawns > 0) {
+            first_dropping_density = density;
+        }
+        System.out.printf("[stress] %6.1f s  %6.0f notes/s  frames %3d, dropped %3d  spawn late p99 %6.2f ms, max %6.2f ms"
+                + "  live notes %5d  heap %5.0f MB, floor %+5.0f MB%n",
+                song_time / 1e9,
+                density,
+                window_frames,
+                window_dropped,
+                window_lateness.get_percentile(0.99) / 1e6,
+                window_lateness.get_max() / 1e6,
+                gameplay.get_live_note_count(),
+                heap / 1e6,
+                (heap_floor - heap_start) / 1e6);
+        last_report = now;
+        window_start_time = song_time;
+        window_frames = 0;
+        window_dropped = 0;
+        window_spawns = 0;
+        window_lateness = new Histogram();
+        heap_floor = Long.MAX_VALUE;
+    }
+
+    private void summarize() {
+        System.out.printf("[stress] Done: %d frames, %d dropped (%.1f%%), spawn late p50 %.2f ms, p99 %.2f ms, max %.2f ms,"
+                + " most notes live %d%n",
+                frames, dropped, 100.0 * dropped / Math.max(1, frames + dropped),
+                lateness.get_percentile(0.50) / 1e6, lateness.get_percentile(0.99) / 1e6, lateness.get_max() / 1e6,
+                most_live);
+        Simulation simulation = gameplay.get_simulation();
+        if (simulation != null) {
+            System.out.printf("[stress] Simulation: %d steps, %d overran, %d presses dropped%n",
+                    simulation.get_steps(), simulation.get_overruns(), simulation.get_dropped_presses());
+        }
+        System.out.println(first_dropping_density < 0
+                ? "[stress] Never dropped a frame"
+                : String.format("[stress] Started dropping frames at %.0f notes/s", first_dropping_density));
+    }
+
+    private static String[] append(String[] args, String arg) {
+        String[] appended = Arrays.copyOf(args, args.length + 1);
+        appended[args.length] = arg;
+        return appended;
+    }
+}
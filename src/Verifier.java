@@ -0,0 +1,166 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+    {@code Verifier} re-scores a directory of submitted {@link Replay}s without a display and reports every one whose claimed score (hits, misses, losses, combo and judgement counts) doesn't match what the rules give for its keypresses.
+
+    Usage: `java Verifier <replay directory> [--charts=<directory>] [--threads=<n>]`; charts are looked up by song name in the charts directory ("../assets" by default), as `.yrct` or a fresh `.yrcb`. The exit code is 1 if anything mismatched or couldn't be verified.
+
+    Replays are spread over a fork-join pool (one thread per core by default). Each chart is parsed once, the first time a replay needs it, and shared after that. The judgement windows are global to the {@link Engine}, so replays are verified in batches, one per set of windows they were recorded with; nearly all of them share the default ones.
+
+    Submissions aren't trusted. A replay that can't be read, has judgement windows the engine wouldn't take, or names a song outside the charts directory fails on its own; the rest of the batch is verified as usual.
+
+    An {@code Outcome} is what became of one replay. A {@code Chart} is a parsed chart with the hash replays are checked against.
+ */
+public class Verifier {
+    private static String DEFAULT_CHARTS = "../assets";
+
+    private Path charts;
+    private ConcurrentHashMap<String, Chart> chart_cache = new ConcurrentHashMap<>();
+
+    public Verifier(Path charts) {
+        this.charts = charts;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: java Verifier <replay directory> [--charts=<directory>] [--threads=<n>]");
+            System.exit(1);
+        }
+        Path charts = Path.of(DEFAULT_CHARTS);
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (String arg : args) {
+            if (arg.startsWith("--charts=")) {
+                charts = Path.of(arg.substring("--charts=".length()));
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            }
+        }
+
+        List<Path> replays;
+        try (Stream<Path> files = Files.list(Path.of(args[0]))) {
+            replays = files.filter(file -> file.toString().endsWith(".yrr")).sorted().toList();
+        }
+
+        long begin = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        List<Outcome> outcomes = new Verifier(charts).verify(replays, pool);
+        pool.shutdown();
+        long wall_time = System.nanoTime() - begin;
+
+        int mismatches = 0;
+        int failures = 0;
+        for (Outcome outcome : outcomes) {
+            if (outcome.error != null) {
+                failures++;
+                System.out.printf("FAILED   %s: %s%n", outcome.replay.getFileName(), outcome.error);
+            } else if (!outcome.recording.matches(outcome.rescored)) {
+                mismatches++;
+                System.out.printf("MISMATCH %s%n  claimed  %s%n  rescored %s%n",
+                        outcome.replay.getFileName(),
+                        Replay.describe(outcome.recording.get_score()),
+                        Replay.describe(outcome.rescored));
+            }
+        }
+        System.out.printf("%d replays, %d verified, %d mismatched, %d failed, in %.1f ms on %d threads (%.0f replays/s)%n",
+                outcomes.size(), outcomes.size() - mismatches - failures, mismatches, failures,
+                wall_time / 1e6, threads, outcomes.size() / (wall_time / 1e9));
+        System.exit(mismatches + failures == 0 ? 0 : 1);
+    }
+
+    /** Reads and re-scores every replay on a pool; outcomes come back in the order the replays were given */
+    public List<Outcome> verify(List<Path> replays, ForkJoinPool pool) throws Exception {
+        List<Outcome> outcomes = pool.submit(() -> replays.parallelStream().map(Verifier::read).toList()).get();
+
+        Map<String, List<Outcome>> batches = new LinkedHashMap<>();
+        for (Outcome outcome : outcomes) {
+            if (outcome.error == null) {
+                batches.computeIfAbsent(outcome.recording.get_windows(), windows -> new ArrayList<>()).add(outcome);
+            }
+        }
+        for (Map.Entry<String, List<Outcome>> batch : batches.entrySet()) {
+            Engine.Judgement.configure(batch.getKey());
+            pool.submit(() -> batch.getValue().parallelStream().forEach(this::rescore)).get();
+        }
+        return outcomes;
+    }
+
+    private static Outcome read(Path replay) {
+        Outcome outcome = new Outcome(replay);
+        try {
+            outcome.recording = Replay.Recording.read(replay);
+        } catch (IOException | RuntimeException e) {
+            outcome.error = "unreadable (" + e.getMessage() + ")";
+            return outcome;
+        }
+        try {
+            Engine.Judgement.check(outcome.recording.get_windows());
+        } catch (IllegalArgumentException e) {
+            outcome.error = "bad judgement windows (" + e.getMessage() + ")";
+        }
+        return outcome;
+    }
+
+    private void rescore(Outcome outcome) {
+        try {
+            Replay.Recording recording = outcome.recording;
+            Chart chart = get_chart(recording.get_song(), recording.get_letters());
+            if (chart.hash != recording.get_chart_hash()) {
+                outcome.error = "recorded against a different chart of " + recording.get_song();
+                return;
+            }
+            outcome.rescored = Replay.rescore(recording, chart.sheet);
+        } catch (RuntimeException e) {
+            outcome.error = e.toString();
+        }
+    }
+
+    /** The parsed chart of a song with the given lanes, parsed only the first time it's asked for */
+    private Chart get_chart(String song_name, String[] letters) {
+        return chart_cache.computeIfAbsent(song_name + "/" + String.join(",", letters), key -> {
+            Path path = charts.resolve(song_name.toLowerCase() + ".yrct").toAbsolutePath().normalize();
+            if (!path.getParent().equals(charts.toAbsolutePath().normalize())) {
+                throw new IllegalArgumentException("No chart called " + song_name + " in " + charts);
+            }
+            ChartLoader.Sheet sheet = ChartLoader.load_compiled(path, letters);
+            return new Chart(sheet, Replay.hash(new Engine(sheet, new Headless.SimulatedClock())));
+        });
+    }
+
+    /** An {@code Outcome} is a replay, what was in it, and either its score by the rules or why there isn't one. */
+    public static class Outcome {
+        private Path replay;
+        private Replay.Recording recording;
+        private Scoreboard.Snapshot rescored;
+        private String error;
+
+        public Outcome(Path replay) {
+            this.replay = replay;
+        }
+
+        // @formatter:off
+        public Path get_replay() { return replay; }
+        public Replay.Recording get_recording() { return recording; }
+        public Scoreboard.Snapshot get_rescored() { return rescored; }
+        public String get_error() { return error; }
+        // @formatter:on
+    }
+
+    private static class Chart {
+        private ChartLoader.Sheet sheet;
+        private long hash;
+
+        public Chart(ChartLoader.Sheet sheet, long hash) {
+            this.sheet = sheet;
+            this.hash = hash;
+        }
+    }
+}
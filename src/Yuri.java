@@ -1,70 +1,315 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import javafx.animation.AnimationTimer;
 import javafx.application.Application;
-import javafx.scene.Group;
+import javafx.application.Platform;
+import javafx.geometry.Pos;
 import javafx.scene.Scene;
+import javafx.scene.input.KeyCode;
 import javafx.scene.layout.Background;
 import javafx.scene.layout.BorderPane;
-import javafx.scene.layout.Pane;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 
 /**
-	This is the main class. {@code Yuri} is a four key rhythm game. It mostly describes layout for the main scene by integrating other classes.
+	This is the main class. {@code Yuri} is a rhythm game of four to ten keys, however many the chart has. It mostly describes layout for the main scene by integrating other classes.
+
+	It starts on the song select screen ({@link SelectManager}), which lists every chart in the {@link Library}. Choosing a song builds a fresh main scene around it; escape leaves the song and goes back to the list.
+
+	Nothing that decides the score happens on the FX thread: once a song starts, its {@link Engine} runs on a {@link Simulation} thread, keypresses are queued to it, and the animation timer only draws the simulation's latest frame. Every press goes into the replay from that thread too, as it is judged.
+
+	With `--practice`, a song can be started part way in, loop a section and play slower or faster; see {@link Practice} for its options and keys. Practice isn't recorded.
+
+	Every keypress on a lane also plays a click through {@link Hitsounds}, which has its own low latency mixer; the FX thread only drops a command into its queue.
+
+	Nothing slow happens on the FX thread. The window opens straight away with a loading screen while the library is scanned (and the first song loaded) and the fonts are looked up, concurrently on virtual threads; song select appears once both are done, and how long that took since the JVM started is printed. Likewise a song's music player is made in the background, and the song only starts once it's ready.
+
+	Command line options: `--renderer=nodes|canvas` picks how lanes are drawn, `--audio-offset=<ms>` and `--visual-offset=<ms>` calibrate the {@link GameClock}, `--windows=<ms>,<ms>,<ms>,<ms>` sets the judgement windows, and `--profile` records frame timings from the start (see {@link ProfilerManager}; F3 shows them), `--refresh=<hz>` and `--quality=auto|high|medium|low|minimal` set up the {@link QualityGovernor} (which carries its tier from song to song), `--audio-buffer=<frames>` sizes the hitsound mixer's buffer, `--practice` (with `--from=<s>`, `--to=<s>` and `--rate=<x>`) turns on practice mode, and `--stress` skips song select to autoplay a generated chart (see {@link StressTest}). Every play but practice is recorded as a {@link Replay} in "../replays".
 */
 public class Yuri extends Application {
     private static double WIDTH = 1000.0;
     private static double HEIGHT = 1000.0;
     private static Color BACKGROUND_COLOR = Nord.NIGHT_DARK;
-    private static String SONG_NAME = "Cadente";
-    private static String ARTIST_NAME = "Frozen Starfall";
+    private static Executor BACKGROUND = Thread::startVirtualThread;
+
+    private Stage primary_stage;
+    private Scene select_scene;
+    private SelectManager select;
+    private QualityGovernor quality;
+    private long audio_offset_ms;
+    private long visual_offset_ms;
+    private Hitsounds hitsounds;
+    private volatile int hit_sound = -1; // Until the mixer has loaded it
+
+    // The song being played, if any
+    private Library.Song song;
+    private Replay.Recorder recorder; // Null under stress, which has no chart file to replay against, and in practice
+    private StressTest stress;
+    private Practice practice;
+    private GameplayManager gameplay;
+    private Simulation simulation; // Null until the song starts
+    private ProfilerManager profiler;
+    private Mini.Music music;
+    private AnimationTimer universal_timer;
 
     @Override
     public void start(Stage primary_stage) {
-        Mini.Messenger.SONG_NAME = SONG_NAME;
-        Mini.Messenger.ARTIST_NAME = ARTIST_NAME;
-
+        long launched = ManagementFactory.getRuntimeMXBean().getStartTime();
+        this.primary_stage = primary_stage;
         primary_stage.setTitle("YURI!!!!!!!!!!!!!!!!");
-        Group sparkle_clicky = new Group();
-        Pane sparkle_holder = new Pane(sparkle_clicky);
-        sparkle_holder.setPrefSize(WIDTH, HEIGHT);
+        Engine.Judgement.configure(getParameters().getNamed().get("windows"));
+        audio_offset_ms = parse_offset("audio-offset");
+        visual_offset_ms = parse_offset("visual-offset");
+        quality = new QualityGovernor(
+                Double.parseDouble(getParameters().getNamed().getOrDefault("refresh", "60")),
+                QualityGovernor.Tier.parse(getParameters().getNamed().get("quality")));
+        primary_stage.setScene(new Scene(create_loading_screen("Loading..."), WIDTH, HEIGHT));
+        primary_stage.show();
+        // primary_stage.setMaximized(true);
+        long shown = System.currentTimeMillis();
+
+        CompletableFuture<Void> fonts = CompletableFuture.runAsync(Mini::preload_fonts, BACKGROUND);
+        hitsounds = new Hitsounds(Hitsounds.buffer_option(getParameters().getRaw().toArray(String[]::new)));
+        CompletableFuture.runAsync(() -> {
+            int sound = hitsounds.load_hit(Path.of("../assets"));
+            if (hitsounds.start()) {
+                hit_sound = sound;
+            }
+        }, BACKGROUND);
+        if (getParameters().getUnnamed().contains("--stress")) {
+            CompletableFuture<ChartLoader.Sheet> sheet = CompletableFuture.supplyAsync(
+                    () -> StressTest.generate(getParameters().getRaw().toArray(String[]::new)), BACKGROUND);
+            fonts.thenCombine(sheet, (none, generated) -> generated).whenComplete((generated, error) -> Platform.runLater(() -> {
+                if (error != null) {
+                    fail(error);
+                    return;
+                }
+                Library.Song song = new Library.Song("Stress", "Stress test", "ChartGenerator", null, null);
+                play(new Library.Entry(song, generated, null, 0));
+            }));
+            return;
+        }
+        CompletableFuture<Library> library = CompletableFuture.supplyAsync(() -> {
+            try {
+                Library scanned = Library.scan();
+                scanned.prefetch(0);
+                return scanned;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, BACKGROUND);
+        fonts.thenCombine(library, (none, scanned) -> scanned).whenComplete((scanned, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                fail(error);
+                return;
+            }
+            select = new SelectManager(scanned, this::play);
+            select_scene = new Scene(select, WIDTH, HEIGHT);
+            select_scene.setOnKeyPressed(event -> select.press(event.getCode()));
+            primary_stage.setScene(select_scene);
+            System.out.printf("Startup: window after %d ms, song select after %d ms%n",
+                    shown - launched, System.currentTimeMillis() - launched);
+        }));
+    }
+
+    /** Builds the main scene around a loaded song and starts playing it */
+    private void play(Library.Entry entry) {
+        song = entry.get_song();
+        Mini.Messenger.SONG_NAME = song.get_title();
+        Mini.Messenger.ARTIST_NAME = song.get_artist();
+
+        SparkleManager sparkles = new SparkleManager();
+        sparkles.setPrefSize(WIDTH, HEIGHT);
         BorderPane most_area = new BorderPane();
         ChartManager charts = new ChartManager();
         LabelManager labels = new LabelManager();
-        GameplayManager gameplay = new GameplayManager();
+        music = new Mini.Music(entry.get_media());
+        GameClock clock = new GameClock(music::get_position, audio_offset_ms, visual_offset_ms);
+        simulation = null;
+        gameplay = new GameplayManager(
+                sparkles,
+                Mini.RendererType.parse(getParameters().getNamed().get("renderer")),
+                clock,
+                entry.get_sheet());
+        boolean stressed = song.get_chart() == null;
+        stress = stressed ? new StressTest(gameplay) : null;
+        practice = !stressed && getParameters().getUnnamed().contains("--practice")
+                ? Practice.from_options(getParameters().getNamed())
+                : null;
+        recorder = stressed || practice != null ? null : new Replay.Recorder(
+                Replay.path_for(song.get_name()),
+                song.get_name(),
+                gameplay.get_engine(),
+                audio_offset_ms,
+                visual_offset_ms);
+        profiler = new ProfilerManager(getParameters().getUnnamed().contains("--profile"));
+        gameplay.set_quality(quality.get_tier());
+        sparkles.set_quality(quality.get_tier());
+        quality.set_on_change(tier -> {
+            gameplay.set_quality(tier);
+            sparkles.set_quality(tier);
+        });
         most_area.setLeft(charts);
         most_area.setRight(labels);
         most_area.setCenter(gameplay);
         most_area.setBackground(Background.fill(BACKGROUND_COLOR));
-        StackPane root_area = new StackPane(most_area, sparkle_holder);
+        StackPane waiting = create_loading_screen("Loading...");
+        Mini.Text practice_status = new Mini.Text(practice == null ? "" : practice.describe(), 14.0);
+        StackPane root_area = new StackPane(most_area, sparkles, profiler, practice_status, waiting);
+        StackPane.setAlignment(profiler, Pos.TOP_LEFT);
+        StackPane.setAlignment(practice_status, Pos.TOP_RIGHT);
         Scene main_scene = new Scene(root_area, WIDTH, HEIGHT);
+        main_scene.addPreLayoutPulseListener(profiler::begin_layout);
+        main_scene.addPostLayoutPulseListener(profiler::end_layout);
         primary_stage.setScene(main_scene);
-        primary_stage.show();
-        // primary_stage.setMaximized(true);
-
-        main_scene.setOnKeyPressed(event -> {
-            gameplay.strike_note(event.getText());
-        });
 
         main_scene.setOnMouseClicked(event -> {
-            sparkle_clicky.getChildren().add(new Sparkle(
+            sparkles.add_sparkle(
                     event.getSceneX(),
                     event.getSceneY(),
-                    Nord.ALL_FROST));
+                    Nord.ALL_FROST);
         });
 
-        AnimationTimer universal_timer = new AnimationTimer() {
-            long start = System.nanoTime();
+        main_scene.setOnKeyPressed(event -> {
+            long pressed = System.nanoTime(); // First thing, so judgement doesn't depend on frame rate
+            if (event.getCode() == KeyCode.F3) {
+                profiler.toggle();
+                return;
+            }
+            if (event.getCode() == KeyCode.ESCAPE) {
+                leave();
+                return;
+            }
+            if (practice != null && practice.press(event.getCode(), gameplay.get_state().get_song_time())) {
+                practice_status.setText(practice.describe());
+                return;
+            }
+            int lane = gameplay.get_lane(event.getCode());
+            if (lane < 0 || simulation == null) {
+                return; // Not a lane, or not started yet
+            }
+            simulation.press(lane, pressed);
+            hitsounds.trigger(hit_sound, pressed);
+        });
 
+        universal_timer = new AnimationTimer() {
             public void handle(long now) {
-                gameplay.distribute_timestep(start, now);
+                profiler.begin(now);
+                music.sample(); // For the clock, which the simulation samples
+                profiler.lap(ProfilerManager.Stage.CLOCK);
+                gameplay.distribute_timestep();
+                profiler.lap(ProfilerManager.Stage.GAMEPLAY);
                 charts.distribute_timestep();
+                profiler.lap(ProfilerManager.Stage.CHARTS);
                 labels.distribute_timestep();
+                profiler.lap(ProfilerManager.Stage.LABELS);
+                sparkles.distribute_timestep(now);
+                profiler.lap(ProfilerManager.Stage.SPARKLES);
+                EngineState state = gameplay.get_state();
+                profiler.end(state.get_song_time());
+                profiler.distribute_timestep(
+                        now, root_area, gameplay.get_live_note_count(), sparkles.get_live_count(), quality.get_tier().toString());
+                quality.sample(now);
+                if (stress != null) {
+                    stress.sample(now);
+                }
+                if (state.is_finished()) {
+                    profiler.dump(song.get_name());
+                }
             }
         };
-        universal_timer.start();
+        Mini.Music song_music = music;
+        music.prepare().thenRun(() -> Platform.runLater(() -> {
+            if (music != song_music) {
+                song_music.halt(); // Left before it was ready
+                return;
+            }
+            root_area.getChildren().remove(waiting);
+            Simulation.Listener listener = stress != null ? stress : practice != null ? practice : new Simulation.Listener() {
+                public void struck(int lane, long time, Engine.Judgement judgement) {
+                    recorder.record(lane, time);
+                }
 
-        Mini.Music cadente = new Mini.Music("../assets/" + Mini.Messenger.SONG_NAME.toLowerCase() + ".mp3");
-        cadente.run();
+                public void finished(long song_time) {
+                    recorder.close(song_time, Mini.Messenger.get_snapshot());
+                }
+            };
+            simulation = gameplay.simulate(clock, listener);
+            universal_timer.start();
+            music.play();
+            if (practice != null) {
+                practice.start(simulation, music, clock);
+            }
+        }));
+    }
+
+    /** Stops the song, finishes its replay and profile, and goes back to song select (or quits, under stress) */
+    private void leave() {
+        universal_timer.stop();
+        quality.pause();
+        music.halt();
+        music = null;
+        gameplay.dispose(); // Stops the simulation, so the engine and the recorder are this thread's again
+        simulation = null;
+        profiler.dump(song.get_name());
+        if (select_scene == null) {
+            Platform.exit();
+            return;
+        }
+        if (recorder != null) {
+            recorder.close(gameplay.get_engine().get_song_time(), Mini.Messenger.get_snapshot());
+        }
+        primary_stage.setScene(select_scene);
+        select.refresh();
+    }
+
+    /** A `--<name>=<ms>` calibration offset, 0 if it isn't given; checked before the window opens rather than when a song starts */
+    private long parse_offset(String name) {
+        String value = getParameters().getNamed().getOrDefault(name, "0");
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + name + " must be a whole number of milliseconds, got " + value);
+        }
+    }
+
+    /** Swaps the loading screen for what went wrong, if the library or the fonts couldn't be loaded; the window stays up until it's closed */
+    private void fail(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof UncheckedIOException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        cause.printStackTrace();
+        String reason = cause.getMessage() != null ? cause.getMessage() : cause.toString();
+        primary_stage.setScene(new Scene(create_loading_screen("Couldn't start: " + reason), WIDTH, HEIGHT));
+    }
+
+    /** A plain message over the background, like "Loading..."; in the default font, which is always there */
+    private static StackPane create_loading_screen(String text) {
+        javafx.scene.text.Text message = new javafx.scene.text.Text(text);
+        message.setFill(Nord.SNOW_LIGHT);
+        StackPane screen = new StackPane(message);
+        screen.setBackground(Background.fill(BACKGROUND_COLOR));
+        return screen;
+    }
+
+    /** Stops the hitsounds, and finishes the replay if the window is closed before the song ends (closing one twice is harmless) */
+    @Override
+    public void stop() {
+        hitsounds.close();
+        if (recorder == null) {
+            return;
+        }
+        if (simulation != null) {
+            simulation.stop();
+        }
+        recorder.close(gameplay.get_engine().get_song_time(), Mini.Messenger.get_snapshot());
+        recorder.await(1000);
     }
 }